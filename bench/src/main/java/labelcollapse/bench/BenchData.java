@@ -0,0 +1,142 @@
+package labelcollapse.bench;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import labelcollapse.BidirCondCounts;
+
+
+// BenchData class:
+//    Generates fake label alignment counts for the benchmarks, in process.
+//    "uniform" data is drawn the way make-random-data.pl draws it: each
+//    (src, tgt) pair is kept with the given percent chance and gets a
+//    count drawn uniformly below 10000.  "zipf" data keeps pairs the same
+//    way, but both sides' labels have Zipfian frequencies, so a few labels
+//    carry most of the counts and most cells are small, as in a real
+//    grammar.  Counts are at least 1, so every label has a distribution.
+//    The same arguments always give the same data.
+public final class BenchData
+{
+	private BenchData()
+	{
+	}
+
+
+	// Generate function:
+	//    Returns the cells as {src, tgt, count} triples, labels numbered
+	//    from 0.
+	public static List<int[]> Generate(int numSrc, int numTgt, int pctCoverage,
+									   String counts, long seed)
+	{
+		Random random = new Random(seed);
+		boolean zipf = counts.equals("zipf");
+		if(!zipf && !counts.equals("uniform"))
+			throw new IllegalArgumentException("unknown count distribution " + counts);
+
+		// Zipfian label weights, shuffled so that frequency doesn't follow
+		// the label's number:
+		double[] srcWeights = ZipfWeights(numSrc, random);
+		double[] tgtWeights = ZipfWeights(numTgt, random);
+		double total = 1000.0 * numSrc * numTgt;
+
+		List<int[]> cells = new ArrayList<int[]>();
+		for(int s = 0; s < numSrc; s++)
+		{
+			for(int t = 0; t < numTgt; t++)
+			{
+				if(random.nextInt(100) >= pctCoverage)
+					continue;
+				int count;
+				if(zipf)
+					count = 1 + (int)(total * srcWeights[s] * tgtWeights[t] * random.nextDouble());
+				else
+					count = 1 + random.nextInt(9999);
+				cells.add(new int[] {s, t, count});
+			}
+		}
+		return cells;
+	}
+
+
+	// Fill function:
+	//    Loads the cells into a new table that stores both directions.
+	public static BidirCondCounts<String, String> Fill(List<int[]> cells)
+	{
+		BidirCondCounts<String, String> counts =
+			new BidirCondCounts<String, String>(true, true);
+		for(int[] cell : cells)
+			counts.AddCount(SrcLabel(cell[0]), TgtLabel(cell[1]), cell[2]);
+		return counts;
+	}
+
+
+	public static String SrcLabel(int s)
+	{
+		return "S" + s;
+	}
+
+	public static String TgtLabel(int t)
+	{
+		return "T" + t;
+	}
+
+
+	// WriteCountsFile function:
+	//    Writes the cells in the "counts" input format.
+	public static void WriteCountsFile(List<int[]> cells, String file)
+	throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		for(int[] cell : cells)
+		{
+			out.write(SrcLabel(cell[0]) + "\t" + TgtLabel(cell[1]) + "\t" +
+					  cell[2] + "\n");
+		}
+		out.close();
+	}
+
+
+	// WriteScorableRuleFile function:
+	//    Writes the cells as grammar rules in ScorableRule format.  Writing
+	//    every count out as a separate rule would make huge files, so each
+	//    cell gets between one and four rules.
+	public static void WriteScorableRuleFile(List<int[]> cells, String file)
+	throws IOException
+	{
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		for(int[] cell : cells)
+		{
+			String rule = "G ||| [" + SrcLabel(cell[0]) + "::" + TgtLabel(cell[1]) +
+				"] ||| [X::X,1] les ||| [X::X,1] the |||  ||| 0-0 1-1 ||| 1.0\n";
+			for(int i = 0; i <= cell[2] % 4; i++)
+				out.write(rule);
+		}
+		out.close();
+	}
+
+
+	private static double[] ZipfWeights(int n, Random random)
+	{
+		double[] weights = new double[n];
+		double sum = 0.0;
+		for(int i = 0; i < n; i++)
+		{
+			weights[i] = 1.0 / (i + 1);
+			sum += weights[i];
+		}
+		for(int i = n - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			double tmp = weights[i];
+			weights[i] = weights[j];
+			weights[j] = tmp;
+		}
+		for(int i = 0; i < n; i++)
+			weights[i] /= sum;
+		return weights;
+	}
+}
@@ -0,0 +1,24 @@
+package labelcollapse.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+// BenchMain class:
+//    Runs the benchmarks with the usual JMH command-line options, always
+//    with the GC profiler on, so every result comes with its allocation
+//    rate per operation (gc.alloc.rate.norm) next to its throughput.
+public class BenchMain
+{
+	public static void main(String[] args) throws Exception
+	{
+		Options options = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build();
+		new Runner(options).run();
+	}
+}
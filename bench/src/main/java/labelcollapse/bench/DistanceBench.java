@@ -0,0 +1,100 @@
+package labelcollapse.bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import labelcollapse.BidirCondCounts;
+import labelcollapse.CollapseMetric;
+import labelcollapse.LabelClusters;
+import labelcollapse.LabelCollapser;
+import labelcollapse.LabelPair;
+import labelcollapse.PairSearch;
+
+
+// DistanceBench class:
+//    Each --metric's CollapseMetric.Dist on one pair of source labels at a
+//    time, and the full closest-pair search over all source labels that a
+//    brute-force iteration does with it.  The metrics are the ones
+//    LabelCollapser.NewMetric makes for the command line, with the default
+//    smoothing, and the search is the engine NewPairSearch builds, dense
+//    rows and all.  Dist cycles through a fixed list of random pairs so
+//    that one pair's distributions don't stay in L1.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBench
+{
+	@Param({"100", "1000"})
+	public int labels;
+
+	@Param({"5", "50"})
+	public int coverage;
+
+	@Param({"uniform", "zipf"})
+	public String counts;
+
+	@Param({"l1", "kl", "js", "ward", "mi"})
+	public String metricName;
+
+	private BidirCondCounts<String, String> nodeAligns;
+	private CollapseMetric metric;
+	private PairSearch search;
+	private int[] pairs;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void Setup()
+	{
+		List<int[]> cells = BenchData.Generate(labels, labels, coverage, counts, 42);
+		nodeAligns = BenchData.Fill(cells);
+		metric = LabelCollapser.NewMetric(metricName, 1.0);
+		search = LabelCollapser.NewPairSearch(nodeAligns, true, metric,
+											  new LabelClusters(nodeAligns, true),
+											  "brute");
+
+		Random random = new Random(7);
+		pairs = new int[2 * 1024];
+		for(int i = 0; i < pairs.length; i += 2)
+		{
+			do
+			{
+				pairs[i] = random.nextInt(nodeAligns.NumSrcIDs());
+				pairs[i + 1] = random.nextInt(nodeAligns.NumSrcIDs());
+			}
+			while(pairs[i] == pairs[i + 1] || !nodeAligns.IsSrcItem(pairs[i]) ||
+				  !nodeAligns.IsSrcItem(pairs[i + 1]));
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public double Dist()
+	{
+		next = (next + 2) & (pairs.length - 1);
+		return metric.Dist(nodeAligns, true, pairs[next], pairs[next + 1]);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public LabelPair FindMinPair()
+	{
+		return search.FindMinPair();
+	}
+}
@@ -0,0 +1,95 @@
+package labelcollapse.bench;
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import labelcollapse.BidirCondCounts;
+import labelcollapse.CollapseMetric;
+import labelcollapse.LabelCollapser;
+import labelcollapse.MergeHistory;
+import labelcollapse.RunMetrics;
+import labelcollapse.StopCondition;
+
+
+// EngineBench class:
+//    A collapse run as LabelCollapser.RunCollapse drives it, on both sides
+//    with the L1 metric, for each --engine: setting the engine up, then as
+//    many searches and merges as there are source labels.  A run uses up
+//    its table, so each iteration is one run on a table built before it.
+//    The history goes nowhere, and the progress messages the run writes to
+//    stderr are thrown away while the benchmark runs.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EngineBench
+{
+	@Param({"100", "500"})
+	public int labels;
+
+	@Param({"5", "50"})
+	public int coverage;
+
+	@Param({"uniform", "zipf"})
+	public String counts;
+
+	@Param({"brute", "pivot", "cached", "nnqueue"})
+	public String engine;
+
+	private List<int[]> cells;
+	private CollapseMetric metric;
+	private PrintStream stderr;
+	private BidirCondCounts<String, String> nodeAligns;
+
+	@Setup(Level.Trial)
+	public void Generate()
+	{
+		cells = BenchData.Generate(labels, labels, coverage, counts, 42);
+		metric = LabelCollapser.NewMetric("l1", 0.0);
+		stderr = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@TearDown(Level.Trial)
+	public void RestoreStderr()
+	{
+		System.setErr(stderr);
+	}
+
+	@Setup(Level.Iteration)
+	public void Fill()
+	{
+		nodeAligns = BenchData.Fill(cells);
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> RunCollapse()
+	throws FileNotFoundException
+	{
+		MergeHistory history =
+			new MergeHistory(new PrintStream(OutputStream.nullOutputStream()));
+		LabelCollapser.RunCollapse(nodeAligns, StopCondition.Iters(labels), true, true,
+								   metric, engine, -1.0, history, null,
+								   new RunMetrics(null, null));
+		return nodeAligns;
+	}
+}
@@ -0,0 +1,124 @@
+package labelcollapse.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import labelcollapse.BidirCondCounts;
+import labelcollapse.CountsSnapshot;
+import labelcollapse.InputReader;
+
+
+// InputBench class:
+//    Loading a whole input file with each of the readers.  The files are
+//    generated into the temp directory once per trial and deleted after.
+//    The parallel ScorableRule reader runs on a pool of one thread, so that
+//    it's compared with the sequential one like for like.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputBench
+{
+	@Param({"100", "1000"})
+	public int labels;
+
+	@Param({"5", "50"})
+	public int coverage;
+
+	@Param({"uniform", "zipf"})
+	public String counts;
+
+	private File countsFile;
+	private File srFile;
+	private File snapshotFile;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void Setup() throws IOException
+	{
+		List<int[]> cells = BenchData.Generate(labels, labels, coverage, counts, 42);
+		countsFile = File.createTempFile("lc-bench", ".counts");
+		srFile = File.createTempFile("lc-bench", ".sr");
+		snapshotFile = File.createTempFile("lc-bench", ".snap");
+		BenchData.WriteCountsFile(cells, countsFile.getPath());
+		BenchData.WriteScorableRuleFile(cells, srFile.getPath());
+		CountsSnapshot.Save(BenchData.Fill(cells), snapshotFile.getPath());
+		pool = new ForkJoinPool(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void TearDown()
+	{
+		countsFile.delete();
+		srFile.delete();
+		snapshotFile.delete();
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> FillFromCountsFile() throws IOException
+	{
+		BidirCondCounts<String, String> nodeAligns =
+			new BidirCondCounts<String, String>(true, true);
+		InputReader.FillFromCountsFile(nodeAligns, countsFile.getPath());
+		return nodeAligns;
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> FillFromCountsFileMapped() throws IOException
+	{
+		BidirCondCounts<String, String> nodeAligns =
+			new BidirCondCounts<String, String>(true, true);
+		InputReader.FillFromCountsFileMapped(nodeAligns, countsFile.getPath());
+		return nodeAligns;
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> FillFromScorableRuleFile() throws IOException
+	{
+		BidirCondCounts<String, String> nodeAligns =
+			new BidirCondCounts<String, String>(true, true);
+		InputReader.FillFromScorableRuleFile(nodeAligns, srFile.getPath(),
+											 true, false, true);
+		return nodeAligns;
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> FillFromScorableRuleFileParallel()
+	throws IOException
+	{
+		BidirCondCounts<String, String> nodeAligns =
+			new BidirCondCounts<String, String>(true, true);
+		InputReader.FillFromScorableRuleFileParallel(nodeAligns, srFile.getPath(),
+													 true, false, true, pool, 4);
+		return nodeAligns;
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> LoadSnapshot() throws IOException
+	{
+		BidirCondCounts<String, String> nodeAligns =
+			new BidirCondCounts<String, String>(true, true);
+		CountsSnapshot.Load(nodeAligns, snapshotFile.getPath());
+		return nodeAligns;
+	}
+}
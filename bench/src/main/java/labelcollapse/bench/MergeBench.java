@@ -0,0 +1,107 @@
+package labelcollapse.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.IterationParams;
+
+import labelcollapse.BidirCondCounts;
+
+
+// MergeBench class:
+//    Merges of two source labels by ID, as the collapse loop makes them.
+//    A merge changes its table, so each merge needs a table that hasn't
+//    seen it yet; rebuilding one per merge inside JMH's timing would swamp
+//    a merge's few microseconds.  Instead each table is merged all the way
+//    down in a fixed random order (worked out once per trial), which covers
+//    labels of every size as a collapse run does, and a pool of fresh
+//    tables with enough merges for one iteration's batch is built before
+//    each iteration.  Scores are the time for a whole batch of BATCH_SIZE
+//    merges; the allocation figure is per batch too.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = MergeBench.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = MergeBench.BATCH_SIZE)
+@Fork(1)
+public class MergeBench
+{
+	public static final int BATCH_SIZE = 2000;
+
+	@Param({"100", "500"})
+	public int labels;
+
+	@Param({"5", "50"})
+	public int coverage;
+
+	@Param({"uniform", "zipf"})
+	public String counts;
+
+	private List<int[]> cells;
+	// Kept and retired ID of each merge, in the order a table gets them:
+	private int[] merges;
+	private int numMerges;
+	private List<BidirCondCounts<String, String>> pool;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void Generate()
+	{
+		cells = BenchData.Generate(labels, labels, coverage, counts, 42);
+
+		// Merge random pairs of the labels still left until there's one:
+		BidirCondCounts<String, String> nodeAligns = BenchData.Fill(cells);
+		List<Integer> live = new ArrayList<Integer>();
+		for(int id = 0; id < nodeAligns.NumSrcIDs(); id++)
+			if(nodeAligns.IsSrcItem(id))
+				live.add(id);
+		Random random = new Random(7);
+		numMerges = live.size() - 1;
+		merges = new int[2 * numMerges];
+		for(int m = 0; m < numMerges; m++)
+		{
+			int i = random.nextInt(live.size());
+			int j = random.nextInt(live.size() - 1);
+			if(j >= i)
+				j++;
+			merges[2 * m] = live.get(i);
+			merges[2 * m + 1] = live.get(j);
+			live.set(j, live.get(live.size() - 1));
+			live.remove(live.size() - 1);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void FillPool(IterationParams params)
+	{
+		int numTables = (params.getBatchSize() + numMerges - 1) / numMerges;
+		pool = new ArrayList<BidirCondCounts<String, String>>(numTables);
+		for(int t = 0; t < numTables; t++)
+			pool.add(BenchData.Fill(cells));
+		next = 0;
+	}
+
+	@Benchmark
+	public BidirCondCounts<String, String> MergeSrcIDs()
+	{
+		BidirCondCounts<String, String> nodeAligns = pool.get(next / numMerges);
+		int m = next % numMerges;
+		nodeAligns.MergeSrcIDs(merges[2 * m], merges[2 * m + 1]);
+		next++;
+		return nodeAligns;
+	}
+}
@@ -3,4 +3,6 @@
 LC_HOME=$(dirname $0)
 
 mkdir -p $LC_HOME/bin
-javac -d $LC_HOME/bin  $LC_HOME/src/*.java
+# VectorKernels uses the incubating Vector API; the rest of the code runs
+# without the module, so only add it to java for the SIMD distance kernels.
+javac --add-modules jdk.incubator.vector -d $LC_HOME/bin  $LC_HOME/src/*.java
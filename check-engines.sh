@@ -0,0 +1,28 @@
+#!/bin/env bash
+
+# USAGE:
+#
+#    ./check-engines.sh [<metric> ...]
+#
+# Collapses both sides of a few sets of random counts with each metric
+# given (by default all the ones with a full recomputation to compare
+# against), and checks that every engine merges the same pairs as the
+# brute-force one, and that collapsing one side on its own finds the same
+# distances as with both sides' tables stored.  Build with build.sh first.
+# Exits with status 1 if anything differs.
+
+# Constants:
+LC_HOME=$(dirname $0)
+METRICS=${*:-l1 kl js ward mi}
+DATA=$(mktemp -d)
+trap "rm -rf $DATA" EXIT
+
+status=0
+for SIZES in "20 15 40" "40 30 20" "60 50 10"; do
+	perl $LC_HOME/make-random-data.pl $SIZES > $DATA/counts.txt
+	for METRIC in $METRICS; do
+		echo "== $METRIC on random data ($SIZES)"
+		java --add-modules jdk.incubator.vector -cp $LC_HOME/bin CompareEngines $DATA/counts.txt $METRIC || status=1
+	done
+done
+exit $status
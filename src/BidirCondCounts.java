@@ -1,5 +1,8 @@
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -10,16 +13,32 @@ import java.util.TreeSet;
 //    target-given-source probabilities from some set of joint data.  SrcT is
 //    the data type of the source-side observables, and TgtT is the data type
 //    of the target-side observables.
+//
+//    Observables are interned to dense int IDs as they are first added;
+//    marginals are kept in int arrays and each conditional distribution is
+//    an IntCountMap keyed by the other side's IDs.  The SrcT/TgtT methods
+//    are thin wrappers around the ID-based ones, which are what the
+//    collapse engines use in their inner loops.
+//
+//    For the distance functions, each distribution is also kept normalized
+//    as a SparseDist.  These are built on first use and thrown away
+//    whenever the distribution's counts change.
 public class BidirCondCounts<SrcT, TgtT>
 {
 	// Constructor:
 	public BidirCondCounts(boolean storeSGT, boolean storeTGS)
 	{
 		// Initialize member variables:
-		sgtCounts = new HashMap<TgtT, Map<SrcT, Integer>>();
-		tgsCounts = new HashMap<SrcT, Map<TgtT, Integer>>();
-		sgtMarginals = new HashMap<TgtT, Integer>();
-		tgsMarginals = new HashMap<SrcT, Integer>();
+		srcIndex = new LabelIndex<SrcT>();
+		tgtIndex = new LabelIndex<TgtT>();
+		sgtCounts = new IntCountMap[16];
+		tgsCounts = new IntCountMap[16];
+		sgtMarginals = new int[16];
+		tgsMarginals = new int[16];
+		sgtDists = new SparseDist[16];
+		tgsDists = new SparseDist[16];
+		srcItems = new HashSet<SrcT>();
+		tgtItems = new HashSet<TgtT>();
 
 		// Keep track of which ones we'll fill in:
 		this.storeSGT = storeSGT;
@@ -31,45 +50,143 @@ public class BidirCondCounts<SrcT, TgtT>
 	//    Add a joint count to the current data totals.
 	public void AddCount(SrcT srcID, TgtT tgtID, int count)
 	{
+		AddCountByID(InternSrc(srcID), InternTgt(tgtID), count);
+	}
+
+
+	// AddCountByID function:
+	//    Same as AddCount, for observables that have already been interned
+	//    with InternSrc and InternTgt.
+	public void AddCountByID(int src, int tgt, int count)
+	{
+		totalCount += count;
+
 		// Update source-given-target marginal and distribution counts:
 		if(storeSGT)
 		{
-			if(sgtMarginals.containsKey(tgtID))
-			{
-				sgtMarginals.put(tgtID, sgtMarginals.get(tgtID) + count);
-				if(sgtCounts.get(tgtID).containsKey(srcID))
-					sgtCounts.get(tgtID).put(srcID,
-											 sgtCounts.get(tgtID).get(srcID) + count);
-				else
-					sgtCounts.get(tgtID).put(srcID, count);
-			}
-			else
+			if(sgtCounts[tgt] == null)
 			{
-				sgtMarginals.put(tgtID, count);
-				sgtCounts.put(tgtID, new HashMap<SrcT, Integer>());
-				sgtCounts.get(tgtID).put(srcID, count);
+				sgtCounts[tgt] = new IntCountMap();
+				tgtItems.add(tgtIndex.GetLabel(tgt));
 			}
+			sgtMarginals[tgt] += count;
+			int size = sgtCounts[tgt].Size();
+			sgtCounts[tgt].Add(src, count);
+			sgtCells += sgtCounts[tgt].Size() - size;
+			sgtDists[tgt] = null;
 		}
-			
+
 		// Update target-given-source marginal and distribution counts:
 		if(storeTGS)
 		{
-			if(tgsMarginals.containsKey(srcID))
+			if(tgsCounts[src] == null)
 			{
-				tgsMarginals.put(srcID, tgsMarginals.get(srcID) + count);
-				if(tgsCounts.get(srcID).containsKey(tgtID))
-					tgsCounts.get(srcID).put(tgtID,
-											 tgsCounts.get(srcID).get(tgtID) + count);
-				else
-					tgsCounts.get(srcID).put(tgtID, count);
-			}
-			else
-			{
-				tgsMarginals.put(srcID, count);
-				tgsCounts.put(srcID, new HashMap<TgtT, Integer>());
-				tgsCounts.get(srcID).put(tgtID, count);
+				tgsCounts[src] = new IntCountMap();
+				srcItems.add(srcIndex.GetLabel(src));
 			}
+			tgsMarginals[src] += count;
+			int size = tgsCounts[src].Size();
+			tgsCounts[src].Add(tgt, count);
+			tgsCells += tgsCounts[src].Size() - size;
+			tgsDists[src] = null;
+		}
+	}
+
+
+	// ReserveSGTRow/ReserveTGSRow functions:
+	//    Sizes an ID's row up front for the given number of cells, so that
+	//    bulk loads that know the sizes don't have to grow the rows as they
+	//    go.  An ID with no cells is left alone.
+	public void ReserveSGTRow(int tgt, int numCells)
+	{
+		if(storeSGT && numCells > 0 && sgtCounts[tgt] == null)
+		{
+			sgtCounts[tgt] = new IntCountMap(numCells);
+			tgtItems.add(tgtIndex.GetLabel(tgt));
+		}
+	}
+
+	public void ReserveTGSRow(int src, int numCells)
+	{
+		if(storeTGS && numCells > 0 && tgsCounts[src] == null)
+		{
+			tgsCounts[src] = new IntCountMap(numCells);
+			srcItems.add(srcIndex.GetLabel(src));
+		}
+	}
+
+
+	// InternSrc function:
+	//    Returns the ID of a source observable, assigning a new one if it
+	//    hasn't been seen before.
+	public int InternSrc(SrcT srcID)
+	{
+		int id = srcIndex.Intern(srcID);
+		if(id >= tgsCounts.length)
+		{
+			int capacity = Math.max(id + 1, tgsCounts.length * 2);
+			tgsCounts = Arrays.copyOf(tgsCounts, capacity);
+			tgsMarginals = Arrays.copyOf(tgsMarginals, capacity);
+			tgsDists = Arrays.copyOf(tgsDists, capacity);
+		}
+		return id;
+	}
+
+	public int InternTgt(TgtT tgtID)
+	{
+		int id = tgtIndex.Intern(tgtID);
+		if(id >= sgtCounts.length)
+		{
+			int capacity = Math.max(id + 1, sgtCounts.length * 2);
+			sgtCounts = Arrays.copyOf(sgtCounts, capacity);
+			sgtMarginals = Arrays.copyOf(sgtMarginals, capacity);
+			sgtDists = Arrays.copyOf(sgtDists, capacity);
 		}
+		return id;
+	}
+
+
+	// Interned-ID lookups.  An ID stays valid until its item is merged
+	// away; IsSrcItem/IsTgtItem say whether it's still in use.
+
+	public int GetSrcID(SrcT srcID)
+	{
+		return srcIndex.GetID(srcID);
+	}
+
+	public int GetTgtID(TgtT tgtID)
+	{
+		return tgtIndex.GetID(tgtID);
+	}
+
+	public SrcT GetSrcLabel(int src)
+	{
+		return srcIndex.GetLabel(src);
+	}
+
+	public TgtT GetTgtLabel(int tgt)
+	{
+		return tgtIndex.GetLabel(tgt);
+	}
+
+	public int NumSrcIDs()
+	{
+		return srcIndex.Size();
+	}
+
+	public int NumTgtIDs()
+	{
+		return tgtIndex.Size();
+	}
+
+	public boolean IsSrcItem(int src)
+	{
+		return (src >= 0 && src < tgsCounts.length && tgsCounts[src] != null);
+	}
+
+	public boolean IsTgtItem(int tgt)
+	{
+		return (tgt >= 0 && tgt < sgtCounts.length && sgtCounts[tgt] != null);
 	}
 
 
@@ -77,285 +194,414 @@ public class BidirCondCounts<SrcT, TgtT>
 	//    Returns the total number of unique (src, tgt) pairs currently stored.
 	//    Either SGT or TGS counts (or both) may be filled in; if they're
 	//    both filled in, we assume the total count is the same and just use
-	//    the SGT side.
+	//    the SGT side.  Both tables keep a running count of their non-zero
+	//    cells, so this is O(1).
 	public int NumPairs()
 	{
-		// Compute number of data points in SGT table:
-		int total1 = 0;
-		for(TgtT id : sgtCounts.keySet())
-			total1 += sgtCounts.get(id).size();
-		if(total1 > 0)
-			return total1;
-
-		// If nothing was in SGT, compute TGS and return that instead:
-		int total2 = 0;
-		for(SrcT id : tgsCounts.keySet())
-			total2 += tgsCounts.get(id).size();
-		return total2;
+		if(sgtCells > 0)
+			return sgtCells;
+		return tgsCells;
 	}
 
-	
+
 	public int NumSrcItems()
 	{
-		return tgsMarginals.size();
+		return srcItems.size();
 	}
-	
+
 	public int NumTgtItems()
 	{
-		return sgtMarginals.size();
+		return tgtItems.size();
 	}
-	
+
+
+	// IsLiveSrcID/IsLiveTgtID and NumLiveSrcIDs/NumLiveTgtIDs functions:
+	//    Which IDs are in use, and how many, on each side.  Unlike
+	//    IsSrcItem/IsTgtItem and NumSrcItems/NumTgtItems, these don't
+	//    depend on which tables are stored: a side whose conditional table
+	//    isn't filled in has no items, but its labels still count here.
+	public boolean IsLiveSrcID(int src)
+	{
+		return (src >= 0 && src < srcIndex.Size() && srcIndex.IsLive(src));
+	}
+
+	public boolean IsLiveTgtID(int tgt)
+	{
+		return (tgt >= 0 && tgt < tgtIndex.Size() && tgtIndex.IsLive(tgt));
+	}
+
+	public int NumLiveSrcIDs()
+	{
+		return srcIndex.NumLive();
+	}
+
+	public int NumLiveTgtIDs()
+	{
+		return tgtIndex.NumLive();
+	}
+
+
+	// NumTotalCounts function:
+	//    The sum of all the counts added, which merging never changes.
+	public long NumTotalCounts()
+	{
+		return totalCount;
+	}
+
 
 	public int NumTotalSrcCounts()
 	{
 		int total = 0;
-		for(SrcT id : tgsMarginals.keySet())
-			total += tgsMarginals.get(id);
+		for(int src = 0; src < NumSrcIDs(); src++)
+			total += tgsMarginals[src];
 		return total;
 	}
-	
+
 	public int NumTotalTgtCounts()
 	{
 		int total = 0;
-		for(TgtT id : sgtMarginals.keySet())
-			total += sgtMarginals.get(id);
+		for(int tgt = 0; tgt < NumTgtIDs(); tgt++)
+			total += sgtMarginals[tgt];
 		return total;
 	}
 
 
 	public int NumSGTAlternatives(TgtT tgtID)
 	{
-		if(!sgtCounts.containsKey(tgtID))
+		int tgt = tgtIndex.GetID(tgtID);
+		if(!IsTgtItem(tgt))
 			return 0;
-		return sgtCounts.get(tgtID).size();
+		return sgtCounts[tgt].Size();
 	}
-	
+
 	public int NumTGSAlternatives(SrcT srcID)
 	{
-		if(!tgsCounts.containsKey(srcID))
+		int src = srcIndex.GetID(srcID);
+		if(!IsSrcItem(src))
 			return 0;
-		return tgsCounts.get(srcID).size();
+		return tgsCounts[src].Size();
 	}
 
 
+	// NOTE: These build a new map on every call; inner loops should use
+	// the ID-based GetSGTRow/GetTGSRow instead.
 	public Map<SrcT, Integer> GetSGTAlternativeCounts(TgtT tgtID)
 	{
-		if(!sgtCounts.containsKey(tgtID))
-			return new HashMap<SrcT, Integer>();
-		return sgtCounts.get(tgtID);
+		Map<SrcT, Integer> result = new HashMap<SrcT, Integer>();
+		int tgt = tgtIndex.GetID(tgtID);
+		if(!IsTgtItem(tgt))
+			return result;
+		IntCountMap row = sgtCounts[tgt];
+		for(int slot = 0; slot < row.Capacity(); slot++)
+			if(row.KeyAt(slot) != IntCountMap.EMPTY)
+				result.put(srcIndex.GetLabel(row.KeyAt(slot)), row.ValueAt(slot));
+		return result;
 	}
 
 	public Map<TgtT, Integer> GetTGSAlternativeCounts(SrcT srcID)
 	{
-		if(!tgsCounts.containsKey(srcID))
-			return new HashMap<TgtT, Integer>();
-		return tgsCounts.get(srcID);
+		Map<TgtT, Integer> result = new HashMap<TgtT, Integer>();
+		int src = srcIndex.GetID(srcID);
+		if(!IsSrcItem(src))
+			return result;
+		IntCountMap row = tgsCounts[src];
+		for(int slot = 0; slot < row.Capacity(); slot++)
+			if(row.KeyAt(slot) != IntCountMap.EMPTY)
+				result.put(tgtIndex.GetLabel(row.KeyAt(slot)), row.ValueAt(slot));
+		return result;
+	}
+
+
+	// GetSGTRow/GetTGSRow functions:
+	//    The raw conditional counts for an ID, keyed by the other side's
+	//    IDs.  The returned map is live and must not be modified.
+	public IntCountMap GetSGTRow(int tgt)
+	{
+		return sgtCounts[tgt];
+	}
+
+	public IntCountMap GetTGSRow(int src)
+	{
+		return tgsCounts[src];
 	}
 
 
 	public Set<SrcT> GetSrcItems()
 	{
-		return tgsMarginals.keySet();
+		return Collections.unmodifiableSet(srcItems);
 	}
 
 	public Set<TgtT> GetTgtItems()
 	{
-		return sgtMarginals.keySet();
+		return Collections.unmodifiableSet(tgtItems);
 	}
 
-	
+
 	public void MergeSrcItems(SrcT srcID1, SrcT srcID2, SrcT mergedID)
+	{
+		MergeSrcIDs(srcIndex.GetID(srcID1), srcIndex.GetID(srcID2), mergedID);
+	}
+
+
+	// MergeSrcIDs function:
+	//    Merges the second source ID into the first one, which is renamed
+	//    to the given merged observable.  The second ID is retired.
+	public void MergeSrcIDs(int src1, int src2, SrcT mergedID)
 	{
 		// Print merging information in Graphviz format:
-		double diff = CalcTGSL1Dist(srcID1, srcID2);
+		double diff = CalcTGSL1Dist(src1, src2);
 		System.err.format("\t\"Src:%s\" -> \"Src:%s\" [label = \"%.4f\"];\n",
-				          mergedID.toString(), srcID1.toString(), diff);
+				          mergedID.toString(), srcIndex.GetLabel(src1).toString(), diff);
 		System.err.format("\t\"Src:%s\" -> \"Src:%s\" [label = \"%.4f\"];\n",
-						  mergedID.toString(), srcID2.toString(), diff);
+						  mergedID.toString(), srcIndex.GetLabel(src2).toString(), diff);
 
+		// Rename first ID to the merged one and retire the second:
+		srcItems.remove(srcIndex.GetLabel(src1));
+		srcItems.remove(srcIndex.GetLabel(src2));
+		srcItems.add(mergedID);
+		srcIndex.Rename(src1, mergedID);
+		srcIndex.Retire(src2);
+		MergeSrcCounts(src1, src2);
+	}
+
+
+	// MergeSrcIDs function:
+	//    Merges the second source ID into the first one without renaming
+	//    it: the first ID keeps its label, for callers that keep track of
+	//    what's been merged by ID themselves (see LabelClusters).  The
+	//    second ID is retired.
+	public void MergeSrcIDs(int src1, int src2)
+	{
+		srcItems.remove(srcIndex.GetLabel(src2));
+		srcIndex.Retire(src2);
+		MergeSrcCounts(src1, src2);
+	}
+
+
+	private void MergeSrcCounts(int src1, int src2)
+	{
 		// Merge TGS marginal counts:
-		int tgsMarg = tgsMarginals.remove(srcID1) +
-			          tgsMarginals.remove(srcID2);
-		tgsMarginals.put(mergedID, tgsMarg);
+		tgsMarginals[src1] += tgsMarginals[src2];
+		tgsMarginals[src2] = 0;
 
 		// Merge TGS distributional counts: start with ID1's, then add in
 		// everything from ID2:
-		Map<TgtT, Integer> newTGSs =
-			new HashMap<TgtT, Integer>(tgsCounts.remove(srcID1));
-		Map<TgtT, Integer> id2TGSs =
-			new HashMap<TgtT, Integer>(tgsCounts.remove(srcID2));
-		for(TgtT tgt : id2TGSs.keySet())
+		IntCountMap id2TGSs = tgsCounts[src2];
+		tgsCells -= tgsCounts[src1].Size() + id2TGSs.Size();
+		for(int slot = 0; slot < id2TGSs.Capacity(); slot++)
+			if(id2TGSs.KeyAt(slot) != IntCountMap.EMPTY)
+				tgsCounts[src1].Add(id2TGSs.KeyAt(slot), id2TGSs.ValueAt(slot));
+		tgsCounts[src2] = null;
+		tgsDists[src1] = null;
+		tgsDists[src2] = null;
+		tgsCells += tgsCounts[src1].Size();
+
+		// Merge SGT distributional counts: the TGS table doubles as the
+		// index of which targets have ID1 or ID2 in their rows, so only
+		// the merged row's keys need looking at.  For each of those, take
+		// out ID1 and ID2 counts, then put back their sum:
+		if(storeSGT)
 		{
-			if(newTGSs.containsKey(tgt))
+			IntCountMap support = tgsCounts[src1];
+			for(int slot = 0; slot < support.Capacity(); slot++)
 			{
-				int count = newTGSs.get(tgt) + id2TGSs.get(tgt);
-				newTGSs.put(tgt, count);
+				int tgt = support.KeyAt(slot);
+				if(tgt == IntCountMap.EMPTY)
+					continue;
+				int size = sgtCounts[tgt].Size();
+				int count = sgtCounts[tgt].Remove(src1) + sgtCounts[tgt].Remove(src2);
+				sgtCounts[tgt].Add(src1, count);
+				sgtDists[tgt] = null;
+				sgtCells += sgtCounts[tgt].Size() - size;
 			}
-			else
-				newTGSs.put(tgt, id2TGSs.get(tgt));
-		}
-		tgsCounts.put(mergedID, newTGSs);
-		
-		// Merge SGT distributional counts: for each target, take out ID1 and
-		// ID2 counts, then put back their sum:
-		for(TgtT tgt : sgtCounts.keySet())
-		{
-			int count = 0;
-			if(sgtCounts.get(tgt).containsKey(srcID1))
-				count += sgtCounts.get(tgt).remove(srcID1);
-			if(sgtCounts.get(tgt).containsKey(srcID2))
-				count += sgtCounts.get(tgt).remove(srcID2);
-			if(count > 0)
-				sgtCounts.get(tgt).put(mergedID, count);
 		}
 	}
-	
-	
+
+
 	public void MergeTgtItems(TgtT tgtID1, TgtT tgtID2, TgtT mergedID)
+	{
+		MergeTgtIDs(tgtIndex.GetID(tgtID1), tgtIndex.GetID(tgtID2), mergedID);
+	}
+
+
+	// MergeTgtIDs function:
+	//    Merges the second target ID into the first one, which is renamed
+	//    to the given merged observable.  The second ID is retired.
+	public void MergeTgtIDs(int tgt1, int tgt2, TgtT mergedID)
 	{
 		// Print merging information in Graphviz format:
-		double diff = CalcSGTL1Dist(tgtID1, tgtID2);
+		double diff = CalcSGTL1Dist(tgt1, tgt2);
 		System.err.format("\t\"Tgt:%s\" -> \"Tgt:%s\" [label = \"%.4f\"];\n",
-		          		  mergedID.toString(), tgtID1.toString(), diff);
+		          		  mergedID.toString(), tgtIndex.GetLabel(tgt1).toString(), diff);
 		System.err.format("\t\"Tgt:%s\" -> \"Tgt:%s\" [label = \"%.4f\"];\n",
-		          		  mergedID.toString(), tgtID2.toString(), diff);
+		          		  mergedID.toString(), tgtIndex.GetLabel(tgt2).toString(), diff);
+
+		// Rename first ID to the merged one and retire the second:
+		tgtItems.remove(tgtIndex.GetLabel(tgt1));
+		tgtItems.remove(tgtIndex.GetLabel(tgt2));
+		tgtItems.add(mergedID);
+		tgtIndex.Rename(tgt1, mergedID);
+		tgtIndex.Retire(tgt2);
+		MergeTgtCounts(tgt1, tgt2);
+	}
 
+
+	// MergeTgtIDs function:
+	//    Merges the second target ID into the first one without renaming
+	//    it: the first ID keeps its label, for callers that keep track of
+	//    what's been merged by ID themselves (see LabelClusters).  The
+	//    second ID is retired.
+	public void MergeTgtIDs(int tgt1, int tgt2)
+	{
+		tgtItems.remove(tgtIndex.GetLabel(tgt2));
+		tgtIndex.Retire(tgt2);
+		MergeTgtCounts(tgt1, tgt2);
+	}
+
+
+	private void MergeTgtCounts(int tgt1, int tgt2)
+	{
 		// Merge SGT marginal counts:
-		int sgtMarg = sgtMarginals.remove(tgtID1) +
-			          sgtMarginals.remove(tgtID2);
-		sgtMarginals.put(mergedID, sgtMarg);
-		
+		sgtMarginals[tgt1] += sgtMarginals[tgt2];
+		sgtMarginals[tgt2] = 0;
+
 		// Merge SGT distributional counts: start with ID1's, then add in
 		// everything from ID2:
-		Map<SrcT, Integer> newSGTs =
-			new HashMap<SrcT, Integer>(sgtCounts.remove(tgtID1));
-		Map<SrcT, Integer> id2SGTs =
-			new HashMap<SrcT, Integer>(sgtCounts.remove(tgtID2));
-		for(SrcT src : id2SGTs.keySet())
+		IntCountMap id2SGTs = sgtCounts[tgt2];
+		sgtCells -= sgtCounts[tgt1].Size() + id2SGTs.Size();
+		for(int slot = 0; slot < id2SGTs.Capacity(); slot++)
+			if(id2SGTs.KeyAt(slot) != IntCountMap.EMPTY)
+				sgtCounts[tgt1].Add(id2SGTs.KeyAt(slot), id2SGTs.ValueAt(slot));
+		sgtCounts[tgt2] = null;
+		sgtDists[tgt1] = null;
+		sgtDists[tgt2] = null;
+		sgtCells += sgtCounts[tgt1].Size();
+
+		// Merge TGS distributional counts: the SGT table doubles as the
+		// index of which sources have ID1 or ID2 in their rows, so only
+		// the merged row's keys need looking at.  For each of those, take
+		// out ID1 and ID2 counts, then put back their sum:
+		if(storeTGS)
 		{
-			if(newSGTs.containsKey(src))
+			IntCountMap support = sgtCounts[tgt1];
+			for(int slot = 0; slot < support.Capacity(); slot++)
 			{
-				int count = newSGTs.get(src) + id2SGTs.get(src);
-				newSGTs.put(src, count);
+				int src = support.KeyAt(slot);
+				if(src == IntCountMap.EMPTY)
+					continue;
+				int size = tgsCounts[src].Size();
+				int count = tgsCounts[src].Remove(tgt1) + tgsCounts[src].Remove(tgt2);
+				tgsCounts[src].Add(tgt1, count);
+				tgsDists[src] = null;
+				tgsCells += tgsCounts[src].Size() - size;
 			}
-			else
-				newSGTs.put(src, id2SGTs.get(src));
 		}
-		sgtCounts.put(mergedID, newSGTs);
-		
-		// Merge TGS distributional counts: for each source, take out ID1 and
-		// ID2 counts, then put back their sum:
-		for(SrcT src : tgsCounts.keySet())
-		{
-			int count = 0;
-			if(tgsCounts.get(src).containsKey(tgtID1))
-				count += tgsCounts.get(src).remove(tgtID1);
-			if(tgsCounts.get(src).containsKey(tgtID2))
-				count += tgsCounts.get(src).remove(tgtID2);
-			if(count > 0)
-				tgsCounts.get(src).put(mergedID, count);
-		}		
 	}
-	
+
 
 	public double CalcSrcProb(SrcT srcID)
 	{
-		if(!tgsMarginals.containsKey(srcID))
+		int src = srcIndex.GetID(srcID);
+		if(!IsSrcItem(src))
 			return 0.0;
-		
-		int total = 0;
-		for(SrcT id : tgsMarginals.keySet())
-			total += tgsMarginals.get(id);
-		return ((double)tgsMarginals.get(srcID) / (double)total);
+		return ((double)tgsMarginals[src] / (double)NumTotalSrcCounts());
 	}
 
 	public double CalcTgtProb(TgtT tgtID)
 	{
-		if(!sgtMarginals.containsKey(tgtID))
+		int tgt = tgtIndex.GetID(tgtID);
+		if(!IsTgtItem(tgt))
 			return 0.0;
-		
-		int total = 0;
-		for(TgtT id : sgtMarginals.keySet())
-			total += sgtMarginals.get(id);
-		return ((double)sgtMarginals.get(tgtID) / (double)total);
+		return ((double)sgtMarginals[tgt] / (double)NumTotalTgtCounts());
 	}
 
 
 	public int SrcCount(SrcT srcID)
 	{
-		if(!tgsMarginals.containsKey(srcID))
+		int src = srcIndex.GetID(srcID);
+		if(!IsSrcItem(src))
 			return 0;
-		return tgsMarginals.get(srcID);
+		return tgsMarginals[src];
 	}
 
 	public int TgtCount(TgtT tgtID)
 	{
-		if(!sgtMarginals.containsKey(tgtID))
+		int tgt = tgtIndex.GetID(tgtID);
+		if(!IsTgtItem(tgt))
 			return 0;
-		return sgtMarginals.get(tgtID);
+		return sgtMarginals[tgt];
+	}
+
+
+	public int SrcCountByID(int src)
+	{
+		return tgsMarginals[src];
+	}
+
+	public int TgtCountByID(int tgt)
+	{
+		return sgtMarginals[tgt];
 	}
 
-	
+
 	public double CalcSGTProb(SrcT srcID, TgtT tgtID)
 	{
 		// Zero probability if the source or target IDs don't exist:
-		if(!sgtMarginals.containsKey(tgtID))
-			return 0.0;
-		if(!sgtCounts.get(tgtID).containsKey(srcID))
+		int tgt = tgtIndex.GetID(tgtID);
+		int src = srcIndex.GetID(srcID);
+		if(!IsTgtItem(tgt) || src < 0)
 			return 0.0;
-		
+
 		// Otherwise simple division:
-		return ((double)sgtCounts.get(tgtID).get(srcID) /
-				(double)sgtMarginals.get(tgtID));
+		return ((double)sgtCounts[tgt].Get(src) / (double)sgtMarginals[tgt]);
 	}
 
 	public double CalcTGSProb(SrcT srcID, TgtT tgtID)
 	{
 		// Zero probability if the source or target IDs don't exist:
-		if(!tgsMarginals.containsKey(srcID))
-			return 0.0;
-		if(!tgsCounts.get(srcID).containsKey(tgtID))
+		int src = srcIndex.GetID(srcID);
+		int tgt = tgtIndex.GetID(tgtID);
+		if(!IsSrcItem(src) || tgt < 0)
 			return 0.0;
 
 		// Otherwise simple division:
-		return ((double)tgsCounts.get(srcID).get(tgtID) /
-				(double)tgsMarginals.get(srcID));
+		return ((double)tgsCounts[src].Get(tgt) / (double)tgsMarginals[src]);
 	}
 
 
 	public double CalcSGTEntropy(TgtT tgtID)
 	{
 		// Zero entropy if target ID doesn't exist:
-		if(!sgtMarginals.containsKey(tgtID))
+		int tgt = tgtIndex.GetID(tgtID);
+		if(!IsTgtItem(tgt))
 			return 0.0;
-		
-		// Otherwise compute entropy of the target ID's various sources:
-		double entropy = 0.0;
-		for(SrcT srcID : sgtCounts.get(tgtID).keySet())
-		{
-			double p = CalcSGTProb(srcID, tgtID);
-			entropy -= (p * Math.log(p) / Math.log(2));
-		}
-		return entropy;
+		return CalcEntropy(sgtCounts[tgt], sgtMarginals[tgt]);
 	}
 
 	public double CalcTGSEntropy(SrcT srcID)
 	{
 		// Zero entropy if source ID doesn't exist:
-		if(!tgsMarginals.containsKey(srcID))
+		int src = srcIndex.GetID(srcID);
+		if(!IsSrcItem(src))
 			return 0.0;
-		
-		// Otherwise compute entropy of the source ID's various targets:
+		return CalcEntropy(tgsCounts[src], tgsMarginals[src]);
+	}
+
+	private static double CalcEntropy(IntCountMap counts, int marginal)
+	{
+		// Compute entropy of the ID's various alternatives:
 		double entropy = 0.0;
-		for(TgtT tgtID : tgsCounts.get(srcID).keySet())
+		for(int slot = 0; slot < counts.Capacity(); slot++)
 		{
-			double p = CalcTGSProb(srcID, tgtID);
+			if(counts.KeyAt(slot) == IntCountMap.EMPTY)
+				continue;
+			double p = (double)counts.ValueAt(slot) / (double)marginal;
 			entropy -= (p * Math.log(p) / Math.log(2));
 		}
 		return entropy;
 	}
 
-	
+
 	// NOTE: If you already have the actual entropy, this function may be a
 	// waste of time because it will re-compute it.
 	public double CalcSGTEntropyReduction(TgtT tgtID)
@@ -383,11 +629,14 @@ public class BidirCondCounts<SrcT, TgtT>
 	{
 		// Convert the raw distribution counts into probabilities:
 		Map<SrcT, Double> probs = new HashMap<SrcT, Double>();
-		Map<SrcT, Integer> counts = sgtCounts.get(tgtID);
-		for(SrcT srcID : counts.keySet())
+		int tgt = tgtIndex.GetID(tgtID);
+		IntCountMap counts = sgtCounts[tgt];
+		for(int slot = 0; slot < counts.Capacity(); slot++)
 		{
-			probs.put(srcID,
-					  (double)counts.get(srcID) / (double)sgtMarginals.get(tgtID));
+			if(counts.KeyAt(slot) == IntCountMap.EMPTY)
+				continue;
+			probs.put(srcIndex.GetLabel(counts.KeyAt(slot)),
+					  (double)counts.ValueAt(slot) / (double)sgtMarginals[tgt]);
 		}
 		return probs;
 	}
@@ -396,72 +645,70 @@ public class BidirCondCounts<SrcT, TgtT>
 	{
 		// Convert the raw distribution counts into probabilities:
 		Map<TgtT, Double> probs = new HashMap<TgtT, Double>();
-		Map<TgtT, Integer> counts = tgsCounts.get(srcID);
-		for(TgtT tgtID : counts.keySet())
+		int src = srcIndex.GetID(srcID);
+		IntCountMap counts = tgsCounts[src];
+		for(int slot = 0; slot < counts.Capacity(); slot++)
 		{
-			probs.put(tgtID,
-					  (double)counts.get(tgtID) / (double)tgsMarginals.get(srcID));
+			if(counts.KeyAt(slot) == IntCountMap.EMPTY)
+				continue;
+			probs.put(tgtIndex.GetLabel(counts.KeyAt(slot)),
+					  (double)counts.ValueAt(slot) / (double)tgsMarginals[src]);
 		}
 		return probs;
 	}
 
-	
+
+	// GetSGTDist/GetTGSDist functions:
+	//    The normalized distribution for an ID as a sorted sparse vector,
+	//    rebuilt here if its counts have changed since it was last asked
+	//    for.  Safe to call from several search threads at once as long as
+	//    no counts are being changed at the same time: at worst two threads
+	//    build the same (immutable) vector.
+	public SparseDist GetSGTDist(int tgt)
+	{
+		SparseDist dist = sgtDists[tgt];
+		if(dist == null)
+		{
+			dist = new SparseDist(sgtCounts[tgt], sgtMarginals[tgt]);
+			sgtDists[tgt] = dist;
+		}
+		return dist;
+	}
+
+	public SparseDist GetTGSDist(int src)
+	{
+		SparseDist dist = tgsDists[src];
+		if(dist == null)
+		{
+			dist = new SparseDist(tgsCounts[src], tgsMarginals[src]);
+			tgsDists[src] = dist;
+		}
+		return dist;
+	}
+
+
 	// CalcSGTL1Dist function:
 	//    Compute the L1 distance between the distributions for the two
 	//    specified target IDs.  This is the sum of the absolute differences
 	//    in probability value for each source ID.
 	public double CalcSGTL1Dist(TgtT tgtID1, TgtT tgtID2)
 	{
-		Map<SrcT, Double> dist1 = GetNormSGTDist(tgtID1);
-		Map<SrcT, Double> dist2 = GetNormSGTDist(tgtID2);
-		double totalDiff = 0.0;
-		
-		// Add up the difference in probabilities between dist1 and dist2:
-		for(SrcT srcID : dist1.keySet())
-		{
-			if(dist2.containsKey(srcID))
-			{
-				totalDiff += Math.abs(dist1.get(srcID) - dist2.get(srcID));
-				dist2.remove(srcID);
-			}
-			else
-				totalDiff += dist1.get(srcID);
-		}
-		
-		// Anything left in dist2 hasn't been counted yet (and isn't in dist1):
-		for(SrcT srcID : dist2.keySet())
-		{
-			totalDiff += dist2.get(srcID);
-		}
-		
-		return totalDiff;
+		return CalcSGTL1Dist(tgtIndex.GetID(tgtID1), tgtIndex.GetID(tgtID2));
+	}
+
+	public double CalcSGTL1Dist(int tgt1, int tgt2)
+	{
+		return SparseDist.L1Dist(GetSGTDist(tgt1), GetSGTDist(tgt2));
 	}
 
 	public double CalcTGSL1Dist(SrcT srcID1, SrcT srcID2)
 	{
-		Map<TgtT, Double> dist1 = GetNormTGSDist(srcID1);
-		Map<TgtT, Double> dist2 = GetNormTGSDist(srcID2);
-		double totalDiff = 0.0;
-		
-		// Add up the difference in probabilities between dist1 and dist2:
-		for(TgtT tgtID : dist1.keySet())
-		{
-			if(dist2.containsKey(tgtID))
-			{
-				totalDiff += Math.abs(dist1.get(tgtID) - dist2.get(tgtID));
-				dist2.remove(tgtID);
-			}
-			else
-				totalDiff += dist1.get(tgtID);
-		}
-		
-		// Anything left in dist2 hasn't been counted yet (and isn't in dist1):
-		for(TgtT tgtID : dist2.keySet())
-		{
-			totalDiff += dist2.get(tgtID);
-		}
-		
-		return totalDiff;
+		return CalcTGSL1Dist(srcIndex.GetID(srcID1), srcIndex.GetID(srcID2));
+	}
+
+	public double CalcTGSL1Dist(int src1, int src2)
+	{
+		return SparseDist.L1Dist(GetTGSDist(src1), GetTGSDist(src2));
 	}
 
 
@@ -472,55 +719,27 @@ public class BidirCondCounts<SrcT, TgtT>
 	//    as from http://en.wikipedia.org/wiki/KL_divergence
 	public double CalcSGTKLDivergence(TgtT tgtID1, TgtT tgtID2)
 	{
-		Map<SrcT, Double> dist1 = GetNormSGTDist(tgtID1);
-		Map<SrcT, Double> dist2 = GetNormSGTDist(tgtID2);
-		double diff1 = 0.0;
-		double diff2 = 0.0;
-		
-		// Add up the KL divergence between dist1 and dist2:
-		for(SrcT srcID : dist1.keySet())
-		{
-			if(dist1.containsKey(srcID) && dist2.containsKey(srcID))
-			{
-				// Both target IDs were seen with this source ID;
-				// we're treating 0 log(0) and p log(\infty) both as 0:
-				diff1 += (dist1.get(srcID) *
-						 Math.log(dist1.get(srcID) / dist2.get(srcID)) /
-						 Math.log(2.0));
-				diff2 += (dist2.get(srcID) *
-						 Math.log(dist2.get(srcID) / dist1.get(srcID)) /
-						 Math.log(2.0));
-			}
-		}
-		return (diff1 + diff2);
+		return CalcSGTKLDivergence(tgtIndex.GetID(tgtID1),
+								   tgtIndex.GetID(tgtID2));
+	}
+
+	public double CalcSGTKLDivergence(int tgt1, int tgt2)
+	{
+		return SparseDist.KLDivergence(GetSGTDist(tgt1), GetSGTDist(tgt2));
 	}
 
 	public double CalcTGSKLDivergence(SrcT srcID1, SrcT srcID2)
 	{
-		Map<TgtT, Double> dist1 = GetNormTGSDist(srcID1);
-		Map<TgtT, Double> dist2 = GetNormTGSDist(srcID2);
-		double diff1 = 0.0;
-		double diff2 = 0.0;
-		
-		// Add up the KL divergence between dist1 and dist2:
-		for(TgtT tgtID : dist1.keySet())
-		{
-			if(dist1.containsKey(tgtID) && dist2.containsKey(tgtID))
-			{
-				// Both source IDs were seen with this target ID;
-				// we're treating 0 log(0) and p log(\infty) both as 0:
-				diff1 += (dist1.get(tgtID) *
-						 Math.log(dist1.get(tgtID) / dist2.get(tgtID)) /
-						 Math.log(2));
-				diff2 += (dist2.get(tgtID) *
-						 Math.log(dist2.get(tgtID) / dist1.get(tgtID)) /
-						 Math.log(2));
-			}
-		}
-		return (diff1 + diff2);
+		return CalcTGSKLDivergence(srcIndex.GetID(srcID1),
+								   srcIndex.GetID(srcID2));
 	}
 
-	
+	public double CalcTGSKLDivergence(int src1, int src2)
+	{
+		return SparseDist.KLDivergence(GetTGSDist(src1), GetTGSDist(src2));
+	}
+
+
 	// GetL1NearestSrcNeighbor function:
 	//    Given a source ID, finds the source ID with the smallest L1
 	//    distance to it.  Returns a pair of the ID and its distance.
@@ -529,7 +748,7 @@ public class BidirCondCounts<SrcT, TgtT>
 		// Look over all other source IDs and find the min L1 distance:
 		SrcT minSrc = null;
 		double minDist = 2.1;   // actual max is 2.0
-		for(SrcT otherSrc : tgsCounts.keySet())
+		for(SrcT otherSrc : srcItems)
 		{
 			if(srcID.equals(otherSrc))
 				continue;
@@ -540,7 +759,7 @@ public class BidirCondCounts<SrcT, TgtT>
 				minDist = dist;
 			}
 		}
-		
+
 		// Return the closest source ID:
 		return new IDDist<SrcT>(minSrc, minDist);
 	}
@@ -553,7 +772,7 @@ public class BidirCondCounts<SrcT, TgtT>
 		// Look over all other target IDs and find the min L1 distance:
 		TgtT minTgt = null;
 		double minDist = 2.1;   // actual max is 2.0
-		for(TgtT otherTgt : sgtCounts.keySet())
+		for(TgtT otherTgt : tgtItems)
 		{
 			if(tgtID.equals(otherTgt))
 				continue;
@@ -564,17 +783,17 @@ public class BidirCondCounts<SrcT, TgtT>
 				minDist = dist;
 			}
 		}
-		
+
 		// Return the closest target ID:
 		return new IDDist<TgtT>(minTgt, minDist);
 	}
 
-	
+
 	public void PrintL1NearestNeighbors(boolean distsOnly)
 	{
 		// Print nearest neighbor for each source ID (all on same line):
 		System.out.print("Source L1 nearest neighbors:");
-		SortedSet<SrcT> srcKeys = new TreeSet<SrcT>(tgsCounts.keySet());
+		SortedSet<SrcT> srcKeys = new TreeSet<SrcT>(srcItems);
 		for(SrcT src : srcKeys)
 		{
 			IDDist<SrcT> neighbor = GetL1NearestSrcNeighbor(src);
@@ -588,10 +807,10 @@ public class BidirCondCounts<SrcT, TgtT>
 			}
 		}
 		System.out.print("\n");
-		
+
 		// Print nearest neighbor for each target ID (all on same line):
 		System.out.print("Target L1 nearest neighbors:");
-		SortedSet<TgtT> tgtKeys = new TreeSet<TgtT>(sgtCounts.keySet());
+		SortedSet<TgtT> tgtKeys = new TreeSet<TgtT>(tgtItems);
 		for(TgtT tgt : tgtKeys)
 		{
 			IDDist<TgtT> neighbor = GetL1NearestTgtNeighbor(tgt);
@@ -606,50 +825,50 @@ public class BidirCondCounts<SrcT, TgtT>
 		}
 		System.out.print("\n");
 	}
-	
-	
+
+
 	public void PrintNormDistributionMatrix()
 	{
 		System.out.println("===== TARGET GIVEN SOURCE =====\n");
-		
+
 		// Header row:
-		SortedSet<TgtT> tgtKeys = new TreeSet<TgtT>(sgtCounts.keySet());
+		SortedSet<TgtT> tgtKeys = new TreeSet<TgtT>(tgtItems);
 		System.out.print("\t");
 		for(TgtT tgt : tgtKeys)
 			System.out.print(tgt.toString() + "\t");
 		System.out.print("\n");
-		
+
 		// Main table:
-		SortedSet<SrcT> srcKeys = new TreeSet<SrcT>(tgsCounts.keySet());
+		SortedSet<SrcT> srcKeys = new TreeSet<SrcT>(srcItems);
 		for(SrcT src : srcKeys)
 		{
 			System.out.print(src.toString() + "\t");
 			for(TgtT tgt : tgtKeys)
 				System.out.print(CalcTGSProb(src, tgt) + "\t");
-			System.out.print("n=" + tgsMarginals.get(src) + "\n");
+			System.out.print("n=" + SrcCount(src) + "\n");
 		}
-		
+
 		System.out.println("\n===== SOURCE GIVEN TARGET =====\n");
-		
+
 		// Header row:
-		SortedSet<SrcT> innerKeys = new TreeSet<SrcT>(tgsCounts.keySet());
+		SortedSet<SrcT> innerKeys = new TreeSet<SrcT>(srcItems);
 		System.out.print("\t");
 		for(SrcT src : innerKeys)
 			System.out.print(src.toString() + "\t");
 		System.out.print("\n");
-		
+
 		// Main table:
-		SortedSet<TgtT> outerKeys = new TreeSet<TgtT>(sgtCounts.keySet());
+		SortedSet<TgtT> outerKeys = new TreeSet<TgtT>(tgtItems);
 		for(TgtT tgt : outerKeys)
 		{
 			System.out.print(tgt + "\t");
 			for(SrcT src : innerKeys)
 				System.out.print(CalcSGTProb(src, tgt) + "\t");
-			System.out.print("n=" + sgtMarginals.get(tgt) + "\n");
+			System.out.print("n=" + TgtCount(tgt) + "\n");
 		}
 	}
 
-	
+
 	// Inner class for an ID and a distance:
 	public class IDDist<T>
 	{
@@ -658,30 +877,41 @@ public class BidirCondCounts<SrcT, TgtT>
 			this.id = id;
 			this.dist = dist;
 		}
-		
+
 		public T GetID()
 		{
 			return id;
 		}
-		
+
 		public double GetDist()
 		{
 			return dist;
 		}
-		
+
 		private T id;
 		private double dist;
 	}
-	
-	
+
+
 	// Member variables:
 
 	private boolean storeSGT;
 	private boolean storeTGS;
-	// SGT: Outer key is target; inner key is source:
-	private Map<TgtT, Map<SrcT, Integer>> sgtCounts;
-	private Map<TgtT, Integer> sgtMarginals;
-	// TGS: Outer key is source; inner key is target:
-	private Map<SrcT, Map<TgtT, Integer>> tgsCounts;
-	private Map<SrcT, Integer> tgsMarginals;
+	// Interned source and target observables:
+	private LabelIndex<SrcT> srcIndex;
+	private LabelIndex<TgtT> tgtIndex;
+	// Observables currently in use on each side:
+	private Set<SrcT> srcItems;
+	private Set<TgtT> tgtItems;
+	// SGT: Indexed by target ID; inner key is source ID:
+	private IntCountMap[] sgtCounts;
+	private int[] sgtMarginals;
+	private SparseDist[] sgtDists;
+	private int sgtCells;
+	// TGS: Indexed by source ID; inner key is target ID:
+	private IntCountMap[] tgsCounts;
+	private int[] tgsMarginals;
+	private SparseDist[] tgsDists;
+	private int tgsCells;
+	private long totalCount;
 }
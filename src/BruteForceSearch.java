@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.List;
+
+
+// BruteForceSearch class:
+//    The engine that looks at every pair of labels on its side in every
+//    iteration (in parallel, with LabelCollapser.GetMinDist), keeping
+//    nothing between iterations but the optional search aids: a PivotIndex
+//    to skip pairs that can't be closest (L1 only), and DenseDists for
+//    sides dense enough to pay for them.  Both are brought up to date with
+//    the labels whose distributions each merge changes.
+public class BruteForceSearch implements PairSearch
+{
+	public BruteForceSearch(BidirCondCounts<String, String> nodeAligns,
+							boolean srcSide, CollapseMetric metric,
+							LabelClusters clusters, PivotIndex pivots,
+							DenseDists dense)
+	{
+		this.nodeAligns = nodeAligns;
+		this.srcSide = srcSide;
+		this.metric = metric;
+		this.clusters = clusters;
+		this.pivots = pivots;
+		this.dense = dense;
+		numEvals = 0;
+	}
+
+
+	public LabelPair FindMinPair()
+	{
+		int numLabels = (srcSide ? nodeAligns.NumSrcItems() : nodeAligns.NumTgtItems());
+		if(numLabels < 2)
+			return null;
+		numEvals += RunMetrics.NumPairs(numLabels);
+		return LabelCollapser.GetMinDist(nodeAligns, srcSide, metric, clusters,
+										 pivots, dense);
+	}
+
+
+	// FindMutualPairs function:
+	//    Nearest neighbors aren't kept, so this is just the closest pair.
+	public List<LabelPair> FindMutualPairs(double maxDist)
+	{
+		List<LabelPair> pairs = new ArrayList<LabelPair>();
+		LabelPair min = FindMinPair();
+		if(min != null && min.dist <= maxDist)
+			pairs.add(min);
+		return pairs;
+	}
+
+
+	public void MergeLabels(int id1, int id2)
+	{
+		if(pivots != null)
+			pivots.Update(id1);
+		if(dense != null)
+			dense.Update(id1);
+	}
+
+
+	public void UpdatePairsAmong(int[] changed, int[] counts1, int[] counts2)
+	{
+		if(pivots != null)
+			pivots.Update(changed);
+		if(dense != null && !metric.IsLocal())
+			dense.UpdateAll();
+		else if(dense != null)
+			dense.Update(changed);
+	}
+
+
+	// NumEvals function:
+	//    Pairs searched, adjusted by the pivot index's net effect: the
+	//    distances it computed itself, less the ones it saved the search.
+	public long NumEvals()
+	{
+		if(pivots == null)
+			return numEvals;
+		return numEvals + pivots.NumEvals() - pivots.NumPruned();
+	}
+
+
+	// Member variables:
+
+	private BidirCondCounts<String, String> nodeAligns;
+	private boolean srcSide;
+	private CollapseMetric metric;
+	private LabelClusters clusters;
+	private PivotIndex pivots;
+	private DenseDists dense;
+	private long numEvals;
+}
@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+// ByteLabelTable class:
+//    Open-addressing hash map from byte strings to int IDs, used by the
+//    mapped counts reader to look labels up straight from the input bytes.
+//    A label is only decoded to a String the first time it's seen; after
+//    that, a lookup hashes and compares bytes without allocating.  Keys
+//    are copied into one shared byte pool.  Linear probing; there are no
+//    removals.
+public class ByteLabelTable
+{
+	public static final int MISSING = -1;
+
+
+	public ByteLabelTable()
+	{
+		slots = new int[64];
+		Arrays.fill(slots, MISSING);
+		hashes = new int[32];
+		offsets = new int[32];
+		lengths = new int[32];
+		ids = new int[32];
+		pool = new byte[1024];
+		poolSize = 0;
+		size = 0;
+	}
+
+
+	public int Size()
+	{
+		return size;
+	}
+
+
+	// Get function:
+	//    Returns the ID stored for the bytes buffer[start, end), or MISSING.
+	public int Get(ByteBuffer buffer, int start, int end)
+	{
+		int entry = slots[Find(buffer, start, end, Hash(buffer, start, end))];
+		if(entry == MISSING)
+			return MISSING;
+		return ids[entry];
+	}
+
+
+	// Put function:
+	//    Stores the ID for the bytes buffer[start, end), which must not
+	//    already be in the table.
+	public void Put(ByteBuffer buffer, int start, int end, int id)
+	{
+		if((size + 1) * 2 > slots.length)
+			Rehash(slots.length * 2);
+		int hash = Hash(buffer, start, end);
+		int slot = Find(buffer, start, end, hash);
+
+		if(size == ids.length)
+		{
+			hashes = Arrays.copyOf(hashes, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		int length = end - start;
+		if(poolSize + length > pool.length)
+			pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+		for(int i = 0; i < length; i++)
+			pool[poolSize + i] = buffer.get(start + i);
+
+		hashes[size] = hash;
+		offsets[size] = poolSize;
+		lengths[size] = length;
+		ids[size] = id;
+		slots[slot] = size;
+		poolSize += length;
+		size++;
+	}
+
+
+	// Slot holding the entry for the bytes, or the empty slot where it
+	// would go:
+	private int Find(ByteBuffer buffer, int start, int end, int hash)
+	{
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while(slots[slot] != MISSING && !Matches(slots[slot], buffer, start, end, hash))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private boolean Matches(int entry, ByteBuffer buffer, int start, int end,
+							int hash)
+	{
+		if(hashes[entry] != hash || lengths[entry] != end - start)
+			return false;
+		int offset = offsets[entry];
+		for(int i = start; i < end; i++)
+			if(pool[offset++] != buffer.get(i))
+				return false;
+		return true;
+	}
+
+	private void Rehash(int capacity)
+	{
+		slots = new int[capacity];
+		Arrays.fill(slots, MISSING);
+		int mask = capacity - 1;
+		for(int entry = 0; entry < size; entry++)
+		{
+			int slot = hashes[entry] & mask;
+			while(slots[slot] != MISSING)
+				slot = (slot + 1) & mask;
+			slots[slot] = entry;
+		}
+	}
+
+	// FNV-1a over the bytes:
+	private static int Hash(ByteBuffer buffer, int start, int end)
+	{
+		int h = 0x811C9DC5;
+		for(int i = start; i < end; i++)
+		{
+			h ^= (buffer.get(i) & 0xff);
+			h *= 0x01000193;
+		}
+		return (h ^ (h >>> 16));
+	}
+
+
+	// Member variables:
+
+	private int[] slots;
+	private int[] hashes;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] ids;
+	private byte[] pool;
+	private int poolSize;
+	private int size;
+}
@@ -0,0 +1,303 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+
+// Checkpoint class:
+//    Saves enough of a collapse run to pick it up again after the job is
+//    killed.  Rather than the merged tables themselves, a checkpoint holds
+//    the counts as they were before the first merge (as a CountsSnapshot)
+//    and the list of merges made so far; resuming replays the merges, which
+//    rebuilds the merged BidirCondCounts and both collapse maps exactly and
+//    lets the resumed run print the same output for the finished
+//    iterations as the original run did.  Replaying a merge is cheap next
+//    to the search that chose it.
+//
+//    The file layout (big-endian) is:
+//       magic, version, the run's settings (see Settings), its
+//       smoothing alpha (0 for L1), number of merges, then each merge as
+//       a side byte (1 for source), the two IDs and the distance,
+//       followed by the counts snapshot.
+//    Each checkpoint is written to a temporary file which is then renamed
+//    over the old one, so a crash mid-write leaves the last one intact.
+public class Checkpoint
+{
+	public static final int MAGIC = 0x4C43434B;  // "LCCK"
+	public static final int VERSION = 2;
+
+
+	// Constructor:
+	//    Starts the checkpoint of a new run from its input counts, before
+	//    anything has been merged.
+	public Checkpoint(BidirCondCounts<String, String> nodeAligns, int settings,
+					  double smoothing)
+	throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		CountsSnapshot.Write(nodeAligns, out);
+		out.close();
+		counts = bytes.toByteArray();
+		this.settings = settings;
+		this.smoothing = smoothing;
+		numMerges = 0;
+		mergeSrc = new boolean[64];
+		mergeID1 = new int[64];
+		mergeID2 = new int[64];
+		mergeDists = new double[64];
+		file = null;
+	}
+
+	private Checkpoint()
+	{
+	}
+
+
+	// Read function:
+	//    Reads a checkpoint written by an earlier run.
+	public static Checkpoint Read(String checkpointFile) throws IOException
+	{
+		ByteBuffer buffer =
+			ByteBuffer.wrap(Files.readAllBytes(new File(checkpointFile).toPath()));
+		try
+		{
+			if(buffer.getInt() != MAGIC)
+				throw new IOException("not a checkpoint file");
+			int version = buffer.getInt();
+			if(version != VERSION)
+				throw new IOException("unsupported checkpoint version " + version);
+
+			Checkpoint checkpoint = new Checkpoint();
+			checkpoint.settings = buffer.getInt();
+			checkpoint.smoothing = buffer.getDouble();
+			checkpoint.numMerges = buffer.getInt();
+			int capacity = Math.max(checkpoint.numMerges, 64);
+			checkpoint.mergeSrc = new boolean[capacity];
+			checkpoint.mergeID1 = new int[capacity];
+			checkpoint.mergeID2 = new int[capacity];
+			checkpoint.mergeDists = new double[capacity];
+			for(int i = 0; i < checkpoint.numMerges; i++)
+			{
+				checkpoint.mergeSrc[i] = (buffer.get() == 1);
+				checkpoint.mergeID1[i] = buffer.getInt();
+				checkpoint.mergeID2[i] = buffer.getInt();
+				checkpoint.mergeDists[i] = buffer.getDouble();
+			}
+			checkpoint.counts = Arrays.copyOfRange(buffer.array(), buffer.position(),
+												   buffer.limit());
+			return checkpoint;
+		}
+		catch(RuntimeException e)
+		{
+			throw new IOException("checkpoint file is truncated or corrupt");
+		}
+	}
+
+
+	// Settings function:
+	//    Packs the settings a resumed run has to share with the original
+	//    one into an int, apart from the smoothing alpha, which is kept
+	//    separately.  The engine and stopping condition may change.
+	public static int Settings(boolean collapseSrc, boolean collapseTgt,
+							   CollapseMetric metric)
+	{
+		return ((collapseSrc ? 1 : 0) | (collapseTgt ? 2 : 0) |
+				(metric.SettingsCode() << 2));
+	}
+
+	public int GetSettings()
+	{
+		return settings;
+	}
+
+	public double GetSmoothing()
+	{
+		return smoothing;
+	}
+
+
+	// LoadCounts function:
+	//    Adds the counts from before the first merge to the given tables,
+	//    which should be empty.
+	public void LoadCounts(BidirCondCounts<String, String> nodeAligns)
+	throws IOException
+	{
+		try
+		{
+			CountsSnapshot.Read(nodeAligns, ByteBuffer.wrap(counts));
+		}
+		catch(RuntimeException e)
+		{
+			throw new IOException("checkpoint file is truncated or corrupt");
+		}
+	}
+
+
+	// WriteTo function:
+	//    From now on, write the checkpoint to the given file whenever
+	//    everyIters iterations or everyMinutes minutes have gone by since
+	//    the last time (either may be 0 to not use it).
+	public void WriteTo(String checkpointFile, int everyIters, double everyMinutes)
+	{
+		file = checkpointFile;
+		this.everyIters = everyIters;
+		everyMillis = (long)(everyMinutes * 60 * 1000);
+		lastWriteIter = numMerges;
+		lastWriteTime = System.currentTimeMillis();
+	}
+
+
+	// RequestWrite function:
+	//    Asks for the checkpoint to be written after the next merge, whether
+	//    or not it's due.  Safe to call from any thread; the write itself
+	//    happens on the thread running the collapse.  Returns false if the
+	//    run isn't writing checkpoints.
+	public boolean RequestWrite()
+	{
+		if(file == null)
+			return false;
+		writeRequested = true;
+		return true;
+	}
+
+
+	// WritePending function:
+	//    Writes the checkpoint if a write was asked for and no merge has
+	//    come along to carry it out, e.g. because the run has stopped.
+	public void WritePending()
+	{
+		if(file != null && writeRequested)
+		{
+			writeRequested = false;
+			Write();
+		}
+	}
+
+
+	public int NumMerges()
+	{
+		return numMerges;
+	}
+
+	public boolean IsSrcMerge(int i)
+	{
+		return mergeSrc[i];
+	}
+
+	public int MergeID1(int i)
+	{
+		return mergeID1[i];
+	}
+
+	public int MergeID2(int i)
+	{
+		return mergeID2[i];
+	}
+
+	public double MergeDist(int i)
+	{
+		return mergeDists[i];
+	}
+
+
+	// AddMerge function:
+	//    Records the next merge of the run, and writes the checkpoint out
+	//    if it's due.
+	public void AddMerge(boolean srcSide, int id1, int id2, double dist)
+	{
+		if(numMerges == mergeSrc.length)
+		{
+			int capacity = numMerges * 2;
+			mergeSrc = Arrays.copyOf(mergeSrc, capacity);
+			mergeID1 = Arrays.copyOf(mergeID1, capacity);
+			mergeID2 = Arrays.copyOf(mergeID2, capacity);
+			mergeDists = Arrays.copyOf(mergeDists, capacity);
+		}
+		mergeSrc[numMerges] = srcSide;
+		mergeID1[numMerges] = id1;
+		mergeID2[numMerges] = id2;
+		mergeDists[numMerges] = dist;
+		numMerges++;
+
+		if(file == null)
+			return;
+		long now = System.currentTimeMillis();
+		if((everyIters > 0 && numMerges - lastWriteIter >= everyIters) ||
+		   (everyMillis > 0 && now - lastWriteTime >= everyMillis) ||
+		   writeRequested)
+		{
+			writeRequested = false;
+			Write();
+			lastWriteIter = numMerges;
+			lastWriteTime = now;
+		}
+	}
+
+
+	// Write function:
+	//    Writes the checkpoint to a temporary file next to the real one,
+	//    then renames it into place.  A failure is reported but doesn't
+	//    stop the run.
+	public void Write()
+	{
+		File target = new File(file);
+		File temp = new File(target.getPath() + ".tmp");
+		try
+		{
+			FileOutputStream stream = new FileOutputStream(temp);
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(stream, 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(settings);
+			out.writeDouble(smoothing);
+			out.writeInt(numMerges);
+			for(int i = 0; i < numMerges; i++)
+			{
+				out.writeByte(mergeSrc[i] ? 1 : 0);
+				out.writeInt(mergeID1[i]);
+				out.writeInt(mergeID2[i]);
+				out.writeDouble(mergeDists[i]);
+			}
+			out.write(counts);
+			out.flush();
+			stream.getFD().sync();
+			out.close();
+			Files.move(temp.toPath(), target.toPath(),
+					   StandardCopyOption.REPLACE_EXISTING,
+					   StandardCopyOption.ATOMIC_MOVE);
+			System.err.println("Wrote checkpoint after " + numMerges +
+							   " iterations to " + file);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error writing checkpoint file " + file + ": " +
+							   e.getMessage());
+		}
+	}
+
+
+	// Member variables:
+
+	private byte[] counts;
+	private int settings;
+	private double smoothing;
+	private int numMerges;
+	private boolean[] mergeSrc;
+	private int[] mergeID1;
+	private int[] mergeID2;
+	private double[] mergeDists;
+	private String file;
+	private int everyIters;
+	private long everyMillis;
+	private int lastWriteIter;
+	private long lastWriteTime;
+	private volatile boolean writeRequested;
+}
@@ -0,0 +1,55 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+// CollapseIterationEvent class:
+//    Flight Recorder event for one iteration of a collapse run, committed
+//    by RunMetrics.  The event's own duration covers the whole iteration,
+//    search and merge.  When no recording is running, committing one costs
+//    next to nothing.
+@Name("labelcollapse.CollapseIteration")
+@Label("Collapse Iteration")
+@Category("Label Collapse")
+@Description("One search-and-merge iteration of a greedy collapse run")
+public class CollapseIterationEvent extends Event
+{
+	@Label("Iteration")
+	public int iteration;
+
+	@Label("Side")
+	@Description("S if two source labels were merged, T for target")
+	public String side;
+
+	@Label("Search Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long searchTime;
+
+	@Label("Merge Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long mergeTime;
+
+	@Label("Distance Evaluations")
+	public long distEvals;
+
+	@Label("Distance")
+	@Description("Distance between the merged labels")
+	public double distance;
+
+	@Label("Source Labels")
+	public int srcLabels;
+
+	@Label("Target Labels")
+	public int tgtLabels;
+
+	@Label("Joint Labels")
+	public int jointLabels;
+
+	@Label("Heap Used")
+	@DataAmount(DataAmount.BYTES)
+	public long heapUsed;
+}
@@ -0,0 +1,31 @@
+// CollapseMetric interface:
+//    How far apart two labels on the same side of a BidirCondCounts table
+//    are, for choosing which pair to merge next.  The collapse engines only
+//    see labels through a metric, so any of them can run with any metric;
+//    the distance between two labels is worked out from their current
+//    counts.  A metric that can also update its distances to a merged
+//    label without going back to the counts implements MergeRuleMetric.
+public interface CollapseMetric
+{
+	// Dist function:
+	//    Distance between the source (or target) labels with the given
+	//    IDs.  Must give the same result whichever way round they're given,
+	//    and must be safe to call from several search threads at once.
+	public double Dist(BidirCondCounts<String, String> nodeAligns,
+					   boolean srcSide, int id1, int id2);
+
+	// IsLocal function:
+	//    Whether a merge on the other side can only change the distance
+	//    between two labels if both of them have counts with the merged
+	//    labels; the caches only update those pairs.  If not (say it
+	//    depends on how many labels there are on the other side, or
+	//    changes when one label's counts in two columns are pooled), every
+	//    distance on a side has to be recomputed after a merge on the
+	//    other side.
+	public boolean IsLocal();
+
+	// SettingsCode function:
+	//    A small number that identifies the metric in a checkpoint's
+	//    settings, so a run can't be resumed with a different one.
+	public int SettingsCode();
+}
@@ -0,0 +1,180 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+// CollapseMonitor class:
+//    Exposes the state of a running collapse over JMX, as the MBean
+//    labelcollapse:type=CollapseMonitor, so a long run can be watched with
+//    jconsole or a JMX exporter rather than by reading its stderr.  It's
+//    updated by RunMetrics at the end of every iteration, and can ask the
+//    run to write a checkpoint or to stop early; both take effect on the
+//    thread running the collapse, between iterations.
+//
+//    The ETA assumes the recent iterations are typical: with a maximum
+//    number of iterations it's the iterations left times the mean recent
+//    iteration time, and with a maximum number of joint labels the
+//    iterations left are estimated from how fast the joint labels have
+//    been going down.  A distance threshold gives no estimate.
+public class CollapseMonitor implements CollapseMonitorMBean
+{
+	public static final String OBJECT_NAME = "labelcollapse:type=CollapseMonitor";
+
+
+	public CollapseMonitor(BidirCondCounts<String, String> nodeAligns,
+						   StopCondition stop, Checkpoint checkpoint)
+	{
+		this.stop = stop;
+		this.checkpoint = checkpoint;
+		iteration = 0;
+		srcLabels = nodeAligns.NumSrcItems();
+		tgtLabels = nodeAligns.NumTgtItems();
+		jointLabels = nodeAligns.NumPairs();
+		lastDist = Double.NaN;
+		iterNanos = new long[WINDOW];
+		jointDrops = new int[WINDOW];
+		numRecent = 0;
+	}
+
+
+	// Register function:
+	//    Registers the monitor with the platform MBean server.  A failure is
+	//    reported but doesn't stop the run.
+	public void Register()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+				this, new ObjectName(OBJECT_NAME));
+		}
+		catch(JMException e)
+		{
+			System.err.println("Couldn't register " + OBJECT_NAME + ": " +
+							   e.getMessage());
+		}
+	}
+
+
+	// Update function:
+	//    Records an iteration that has just finished and how long it took.
+	public synchronized void Update(int iteration, double dist, long nanos,
+									BidirCondCounts<String, String> nodeAligns)
+	{
+		int slot = numRecent % WINDOW;
+		iterNanos[slot] = nanos;
+		jointDrops[slot] = jointLabels - nodeAligns.NumPairs();
+		numRecent++;
+
+		this.iteration = iteration;
+		srcLabels = nodeAligns.NumSrcItems();
+		tgtLabels = nodeAligns.NumTgtItems();
+		jointLabels = nodeAligns.NumPairs();
+		lastDist = dist;
+	}
+
+
+	public synchronized int getIteration()
+	{
+		return iteration;
+	}
+
+	public synchronized int getSourceLabels()
+	{
+		return srcLabels;
+	}
+
+	public synchronized int getTargetLabels()
+	{
+		return tgtLabels;
+	}
+
+	public synchronized int getJointLabels()
+	{
+		return jointLabels;
+	}
+
+	public synchronized double getLastMergeDistance()
+	{
+		return lastDist;
+	}
+
+
+	public synchronized double getIterationMillis()
+	{
+		int n = Math.min(numRecent, WINDOW);
+		if(n == 0)
+			return Double.NaN;
+		long total = 0;
+		for(int i = 0; i < n; i++)
+			total += iterNanos[i];
+		return total / 1e6 / n;
+	}
+
+
+	public synchronized double getEtaSeconds()
+	{
+		int n = Math.min(numRecent, WINDOW);
+		if(n == 0)
+			return -1;
+
+		// Estimate how many iterations are left:
+		double itersLeft;
+		if(stop.GetMaxIters() != StopCondition.NO_LIMIT)
+			itersLeft = Math.max(0, stop.GetMaxIters() - iteration);
+		else if(stop.GetMaxJointLabels() != StopCondition.NO_LIMIT)
+		{
+			long drop = 0;
+			for(int i = 0; i < n; i++)
+				drop += jointDrops[i];
+			if(drop <= 0)
+				return -1;
+			itersLeft = Math.max(0, jointLabels - stop.GetMaxJointLabels()) *
+				(double)n / drop;
+		}
+		else
+			return -1;
+		return itersLeft * getIterationMillis() / 1000;
+	}
+
+
+	public String getStopCondition()
+	{
+		return stop.toString();
+	}
+
+
+	public String checkpoint()
+	{
+		if(checkpoint == null || !checkpoint.RequestWrite())
+			return "This run isn't writing checkpoints; start it with --checkpoint";
+		return "Checkpoint will be written after the current iteration";
+	}
+
+
+	public String stop()
+	{
+		stop.RequestStop();
+		return "Run will stop after the current iteration";
+	}
+
+
+	// Number of recent iterations used for the mean time and the ETA:
+	private static final int WINDOW = 64;
+
+
+	// Member variables:
+
+	private StopCondition stop;
+	private Checkpoint checkpoint;
+	private int iteration;
+	private int srcLabels;
+	private int tgtLabels;
+	private int jointLabels;
+	private double lastDist;
+	// Time taken and drop in joint labels for the last WINDOW iterations,
+	// as circular buffers:
+	private long[] iterNanos;
+	private int[] jointDrops;
+	private int numRecent;
+}
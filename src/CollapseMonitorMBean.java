@@ -0,0 +1,34 @@
+// CollapseMonitorMBean interface:
+//    Management interface of CollapseMonitor.  JMX finds attributes by
+//    their getter names, so these follow the JavaBeans naming rather than
+//    the rest of the code's.
+public interface CollapseMonitorMBean
+{
+	// Last iteration finished (0 before the first one):
+	public int getIteration();
+
+	public int getSourceLabels();
+
+	public int getTargetLabels();
+
+	public int getJointLabels();
+
+	// Distance between the labels merged in the last iteration:
+	public double getLastMergeDistance();
+
+	// Mean wall time of the recent iterations, in milliseconds:
+	public double getIterationMillis();
+
+	// Rough estimate of the time left until the stopping condition is met,
+	// in seconds, or -1 if it can't be estimated:
+	public double getEtaSeconds();
+
+	public String getStopCondition();
+
+	// Writes a checkpoint after the current iteration:
+	public String checkpoint();
+
+	// Stops the run after the current iteration, printing the final tables
+	// as usual:
+	public String stop();
+}
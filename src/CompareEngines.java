@@ -0,0 +1,226 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+
+// CompareEngines class:
+//    Regression check for the collapse engines.  Collapses both sides of a
+//    counts file with the given metric, once with the brute-force engine,
+//    which measures every distance afresh from the counts in every
+//    iteration, and once with each engine that keeps distances between
+//    iterations, and reports the first merge where the two differ.  The
+//    cached distances may come out a few ulps off the fresh ones (merge
+//    rules build them up from old distances), so distances only have to
+//    agree to within a relative TOLERANCE; the pairs merged have to be the
+//    same.  The average linkages are only defined by their merge rule, so
+//    there's nothing to compare them with.
+//
+//    A table collapsed on one side only doesn't store the other side's
+//    distributions, so it also collapses each side on its own with the
+//    brute-force engine, and checks each merge against a plain search
+//    (no pivots or dense rows) of a table with both sides stored, which
+//    has had the same merges made.  Exits with status 1 if anything
+//    differs.
+public class CompareEngines
+{
+	public static void main(String[] args)
+	{
+		if(args.length < 2 || args.length > 3)
+		{
+			PrintUsage();
+			System.exit(1);
+		}
+		String countsFile = args[0];
+		String metricName = args[1];
+		CollapseMetric metric = LabelCollapser.NewMetric(metricName, 1.0);
+		if(metric == null || (metric instanceof MergeRuleMetric &&
+							  !metricName.equals("ward")))
+		{
+			System.err.println("Can't check --metric " + metricName +
+							   " against a full recomputation!");
+			System.exit(1);
+		}
+		int numIters = -1;
+		if(args.length == 3)
+			numIters = Integer.parseInt(args[2]);
+
+		try
+		{
+			String[] ref = Run(countsFile, metric, "brute", numIters, true, true);
+			String[] engines = {"cached", "nnqueue", "pivot"};
+			boolean allSame = true;
+			for(String engine : engines)
+			{
+				if(engine.equals("pivot") && !(metric instanceof L1Metric))
+					continue;
+				String[] merges = Run(countsFile, metric, engine, numIters, true, true);
+				int diffAt = FirstDifference(ref, merges);
+				if(diffAt < 0)
+				{
+					System.out.println(engine + ": same " + ref.length +
+									   " merges as brute");
+					continue;
+				}
+				allSame = false;
+				System.out.println(engine + ": differs from brute at merge " +
+								   (diffAt + 1) + ":");
+				System.out.println("   brute:  " + (diffAt < ref.length ?
+													 ref[diffAt] : "(none)"));
+				System.out.println("   " + engine + ": " + (diffAt < merges.length ?
+															   merges[diffAt] : "(none)"));
+			}
+
+			for(boolean srcSide : new boolean[] {true, false})
+			{
+				String side = (srcSide ? "src" : "tgt");
+				String[] merges = Run(countsFile, metric, "brute", numIters,
+									  srcSide, !srcSide);
+				int diffAt = FirstSideDifference(countsFile, metric, merges);
+				if(diffAt < 0)
+				{
+					System.out.println("side " + side + ": same " + merges.length +
+									   " merges as both sides");
+					continue;
+				}
+				allSame = false;
+				System.out.println("side " + side + ": differs from both sides at merge " +
+								   (diffAt + 1) + ":");
+				System.out.println("   " + side + ": " + merges[diffAt]);
+			}
+			if(!allSame)
+				System.exit(1);
+		}
+		catch(FileNotFoundException e)
+		{
+			System.err.println("Input file " + countsFile + " wasn't found!");
+			System.exit(1);
+		}
+	}
+
+
+	public static void PrintUsage()
+	{
+		System.err.println("Usage:  java CompareEngines <counts-file> <metric> [<num-iters>]\n");
+		System.err.println("<metric>    : any --metric but 'average' and 'weighted'");
+		System.err.println("<num-iters> : how many merges to compare (default: all of them)");
+	}
+
+
+	// Run function:
+	//    Collapses the given sides of the counts file with the given
+	//    engine, storing only the tables those sides need as LabelCollapser
+	//    does, and returns the merge lines of the history.  The run's
+	//    progress messages are thrown away.
+	private static String[] Run(String countsFile, CollapseMetric metric,
+								String engine, int numIters, boolean useSrc,
+								boolean useTgt)
+	throws FileNotFoundException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		MergeHistory history = new MergeHistory(new PrintStream(bytes));
+		PrintStream stderr = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try
+		{
+			BidirCondCounts<String, String> nodeAligns =
+				new BidirCondCounts<String, String>(useTgt, useSrc);
+			InputReader.FillFromCountsFileMapped(nodeAligns, countsFile);
+			if(numIters < 0)
+				numIters = nodeAligns.NumLiveSrcIDs() + nodeAligns.NumLiveTgtIDs();
+			LabelCollapser.RunCollapse(nodeAligns, StopCondition.Iters(numIters),
+									   useSrc, useTgt, metric, engine, -1.0, history,
+									   null, new RunMetrics(null, null));
+		}
+		finally
+		{
+			System.setErr(stderr);
+		}
+
+		// Keep the merge lines:
+		String[] lines = bytes.toString().split("\n");
+		int numMerges = 0;
+		for(String line : lines)
+			if(line.startsWith("M\t"))
+				lines[numMerges++] = line;
+		String[] merges = new String[numMerges];
+		System.arraycopy(lines, 0, merges, 0, numMerges);
+		return merges;
+	}
+
+
+	// FirstDifference function:
+	//    Index of the first merge where the two runs merged different pairs
+	//    or found distances further apart than TOLERANCE, or -1 if they
+	//    agree all the way.
+	private static int FirstDifference(String[] ref, String[] merges)
+	{
+		for(int i = 0; i < Math.max(ref.length, merges.length); i++)
+		{
+			if(i >= ref.length || i >= merges.length)
+				return i;
+			String[] refCols = ref[i].split("\t");
+			String[] cols = merges[i].split("\t");
+			for(int c = 0; c < 5; c++)
+				if(!refCols[c].equals(cols[c]))
+					return i;
+			double refDist = Double.parseDouble(refCols[5]);
+			double dist = Double.parseDouble(cols[5]);
+			if(Math.abs(refDist - dist) > TOLERANCE * Math.max(1.0, Math.abs(refDist)))
+				return i;
+		}
+		return -1;
+	}
+
+
+	// FirstSideDifference function:
+	//    Replays the merges of a one-sided run on a table with both sides
+	//    stored, and returns the index of the first one that isn't the
+	//    closest pair there, or whose distance is further than TOLERANCE
+	//    from the one found there, or -1 if they all agree.  Labels are
+	//    interned in the order they're read whichever tables are stored,
+	//    so the IDs carry over.
+	private static int FirstSideDifference(String countsFile, CollapseMetric metric,
+										   String[] merges)
+	throws FileNotFoundException
+	{
+		BidirCondCounts<String, String> nodeAligns =
+			new BidirCondCounts<String, String>(true, true);
+		PrintStream stderr = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try
+		{
+			InputReader.FillFromCountsFileMapped(nodeAligns, countsFile);
+		}
+		finally
+		{
+			System.setErr(stderr);
+		}
+		if(merges.length == 0)
+			return -1;
+
+		boolean srcSide = merges[0].split("\t")[2].equals("S");
+		LabelClusters clusters = new LabelClusters(nodeAligns, srcSide);
+		for(int i = 0; i < merges.length; i++)
+		{
+			String[] cols = merges[i].split("\t");
+			int id1 = Integer.parseInt(cols[3]);
+			int id2 = Integer.parseInt(cols[4]);
+			double dist = Double.parseDouble(cols[5]);
+			LabelPair ref = LabelCollapser.GetMinDist(nodeAligns, srcSide, metric,
+													  clusters, null, null);
+			if(ref == null || ref.id1 != id1 || ref.id2 != id2 ||
+			   Math.abs(ref.dist - dist) > TOLERANCE * Math.max(1.0, Math.abs(ref.dist)))
+				return i;
+			clusters.Merge(id1, id2);
+			if(srcSide)
+				nodeAligns.MergeSrcIDs(id1, id2);
+			else
+				nodeAligns.MergeTgtIDs(id1, id2);
+		}
+		return -1;
+	}
+
+
+	private static final double TOLERANCE = 1e-9;
+}
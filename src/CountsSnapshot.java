@@ -0,0 +1,224 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+// CountsSnapshot class:
+//    Saves the joint counts in a BidirCondCounts to a compact binary file,
+//    and loads them back much faster than re-reading the original input.
+//    The layout (all ints big-endian) is:
+//       magic, version
+//       number of source labels, then each as a length and UTF-8 bytes
+//       number of target labels, the same way
+//       the number of cells in each source label's TGS row, in ID order,
+//          then the same for each target label's SGT row
+//       which side the rows are keyed by (ROWS_BY_SRC or ROWS_BY_TGT)
+//       number of rows, then for each row: its ID, its number of cells,
+//          and each cell as the other side's ID and the count
+//    Labels are listed in ID order, so a loaded table interns them to the
+//    same IDs as the one that was saved, and the row sizes let its rows be
+//    allocated at full size before any counts go in.  Marginals are the
+//    row and column sums, so they're rebuilt while loading rather than
+//    stored.
+//
+//    Snapshots hold the joint counts only, so they can be loaded for any
+//    --side; they should be saved before any labels are merged.
+public class CountsSnapshot
+{
+	public static final int MAGIC = 0x4C435350;  // "LCSP"
+	public static final int VERSION = 1;
+
+
+	// Save function:
+	//    Writes the counts in the given tables to a snapshot file.
+	public static void Save(BidirCondCounts<String, String> dataTables,
+							String snapshotFile)
+	throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(snapshotFile), 1 << 16));
+		Write(dataTables, out);
+		out.close();
+	}
+
+
+	// Write function:
+	//    Writes a snapshot of the counts to the given stream, which is left
+	//    open.
+	public static void Write(BidirCondCounts<String, String> dataTables,
+							 DataOutputStream out)
+	throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		out.writeInt(dataTables.NumSrcIDs());
+		for(int src = 0; src < dataTables.NumSrcIDs(); src++)
+			WriteLabel(out, dataTables.GetSrcLabel(src));
+		out.writeInt(dataTables.NumTgtIDs());
+		for(int tgt = 0; tgt < dataTables.NumTgtIDs(); tgt++)
+			WriteLabel(out, dataTables.GetTgtLabel(tgt));
+
+		// Either table has all the joint counts; use the TGS rows if
+		// they're there:
+		boolean bySrc = false;
+		for(int src = 0; src < dataTables.NumSrcIDs() && !bySrc; src++)
+			bySrc = dataTables.IsSrcItem(src);
+		int numIDs = (bySrc ? dataTables.NumSrcIDs() : dataTables.NumTgtIDs());
+
+		// Row sizes on both sides:
+		int[] srcCells = new int[dataTables.NumSrcIDs()];
+		int[] tgtCells = new int[dataTables.NumTgtIDs()];
+		int numRows = 0;
+		for(int id = 0; id < numIDs; id++)
+		{
+			if(!(bySrc ? dataTables.IsSrcItem(id) : dataTables.IsTgtItem(id)))
+				continue;
+			IntCountMap row = (bySrc ? dataTables.GetTGSRow(id)
+									 : dataTables.GetSGTRow(id));
+			numRows++;
+			for(int slot = 0; slot < row.Capacity(); slot++)
+			{
+				int other = row.KeyAt(slot);
+				if(other == IntCountMap.EMPTY)
+					continue;
+				srcCells[bySrc ? id : other]++;
+				tgtCells[bySrc ? other : id]++;
+			}
+		}
+		for(int cells : srcCells)
+			out.writeInt(cells);
+		for(int cells : tgtCells)
+			out.writeInt(cells);
+
+		out.writeInt(bySrc ? ROWS_BY_SRC : ROWS_BY_TGT);
+		out.writeInt(numRows);
+		for(int id = 0; id < numIDs; id++)
+		{
+			if(!(bySrc ? dataTables.IsSrcItem(id) : dataTables.IsTgtItem(id)))
+				continue;
+			IntCountMap row = (bySrc ? dataTables.GetTGSRow(id)
+									 : dataTables.GetSGTRow(id));
+			int[] keys = row.Keys();
+			Arrays.sort(keys);
+			out.writeInt(id);
+			out.writeInt(keys.length);
+			for(int key : keys)
+			{
+				out.writeInt(key);
+				out.writeInt(row.Get(key));
+			}
+		}
+	}
+
+
+	// Load function:
+	//    Adds the counts from a snapshot file to the given tables, which
+	//    should be empty.  The file is memory-mapped and read in place.
+	//    A snapshot is all or nothing: if the file is missing, truncated or
+	//    corrupt, an exception is thrown, and the tables may have been
+	//    partly filled and shouldn't be used.
+	public static void Load(BidirCondCounts<String, String> dataTables,
+							String snapshotFile)
+	throws FileNotFoundException, IOException
+	{
+		File file = new File(snapshotFile);
+		if(!file.isFile())
+			throw new FileNotFoundException(snapshotFile);
+
+		System.err.println("Reading snapshot file...");
+		FileChannel channel = FileChannel.open(file.toPath(),
+											   StandardOpenOption.READ);
+		if(channel.size() > Integer.MAX_VALUE)
+		{
+			channel.close();
+			throw new IOException("snapshot too large to map");
+		}
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+										channel.size());
+		channel.close();
+		try
+		{
+			Read(dataTables, buffer);
+		}
+		catch(RuntimeException e)
+		{
+			// Buffer underflows and bad IDs mean a truncated or corrupt file:
+			throw new IOException("snapshot file is truncated or corrupt");
+		}
+	}
+
+
+	// Read function:
+	//    Adds the counts from a snapshot in the given buffer, starting at
+	//    its current position, to the given tables.  Leaves the buffer just
+	//    past the end of the snapshot.
+	public static void Read(BidirCondCounts<String, String> dataTables,
+							ByteBuffer buffer)
+	throws IOException
+	{
+		if(buffer.getInt() != MAGIC)
+			throw new IOException("not a snapshot file");
+		int version = buffer.getInt();
+		if(version != VERSION)
+			throw new IOException("unsupported snapshot version " + version);
+
+		// Intern the labels in order so that they get the same IDs:
+		int numSrc = buffer.getInt();
+		for(int src = 0; src < numSrc; src++)
+			dataTables.InternSrc(ReadLabel(buffer));
+		int numTgt = buffer.getInt();
+		for(int tgt = 0; tgt < numTgt; tgt++)
+			dataTables.InternTgt(ReadLabel(buffer));
+
+		for(int src = 0; src < numSrc; src++)
+			dataTables.ReserveTGSRow(src, buffer.getInt());
+		for(int tgt = 0; tgt < numTgt; tgt++)
+			dataTables.ReserveSGTRow(tgt, buffer.getInt());
+
+		boolean bySrc = (buffer.getInt() == ROWS_BY_SRC);
+		int numRows = buffer.getInt();
+		for(int r = 0; r < numRows; r++)
+		{
+			int id = buffer.getInt();
+			int numCells = buffer.getInt();
+			for(int c = 0; c < numCells; c++)
+			{
+				int other = buffer.getInt();
+				int count = buffer.getInt();
+				if(bySrc)
+					dataTables.AddCountByID(id, other, count);
+				else
+					dataTables.AddCountByID(other, id, count);
+			}
+		}
+	}
+
+
+	private static void WriteLabel(DataOutputStream out, String label)
+	throws IOException
+	{
+		byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String ReadLabel(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	private static final int ROWS_BY_SRC = 0;
+	private static final int ROWS_BY_TGT = 1;
+}
@@ -0,0 +1,235 @@
+import java.util.Arrays;
+
+
+// DenseDists class:
+//    The normalized distributions of the labels on one side of a
+//    BidirCondCounts table as dense rows of doubles, one column per ID on
+//    the other side, for when most of the columns are non-zero anyway.
+//    Walking two dense rows in step is much cheaper than a merge-join of
+//    two sparse ones there, and with the jdk.incubator.vector module (run
+//    java with --add-modules jdk.incubator.vector) it's done with SIMD
+//    lanes by VectorKernels.  Without the module the same rows are walked
+//    with a plain loop.
+//
+//    The dense kernels add the terms up in a different order from the
+//    sparse ones, so the results can differ in the last bits.  Searches
+//    use them as a filter: a pair whose dense distance is more than Slack
+//    beyond the best so far can't win, and any other pair is measured
+//    again with the sparse kernel, so the merges are exactly the ones the
+//    sparse path makes.
+//
+//    As with PivotIndex, a label's row has to be brought up to date with
+//    Update whenever its distribution changes.  For a smoothed KL
+//    divergence every live column of a row is filled in, with the label's
+//    smoothed probabilities, so all the rows change whenever the number of
+//    labels on the other side does; UpdateAll is for that.  The JS
+//    divergence needs a log per column per pair, so it has no dense rows.
+public class DenseDists
+{
+	// Rows are padded to a multiple of this many doubles (512 bits):
+	public static final int ROW_ALIGN = 8;
+
+
+	// Constructor:
+	//    Rows for L1 distances if the divergence is null, or else for a KL
+	//    divergence.
+	public DenseDists(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+					  Divergence divergence)
+	{
+		this.nodeAligns = nodeAligns;
+		this.srcSide = srcSide;
+		this.divergence = divergence;
+		useL1 = (divergence == null);
+		if(srcSide)
+		{
+			numSlots = nodeAligns.NumSrcIDs();
+			width = nodeAligns.NumTgtIDs();
+		}
+		else
+		{
+			numSlots = nodeAligns.NumTgtIDs();
+			width = nodeAligns.NumSrcIDs();
+		}
+		stride = (width + ROW_ALIGN - 1) / ROW_ALIGN * ROW_ALIGN;
+		probs = new double[numSlots * stride];
+		logs = null;
+		if(!useL1)
+			logs = new double[numSlots * stride];
+		UpdateAll();
+	}
+
+
+	// IsWorthwhile function:
+	//    Whether the labels on one side are dense enough for dense rows to
+	//    pay off, and few enough that the rows fit in memory.
+	public static boolean IsWorthwhile(BidirCondCounts<String, String> nodeAligns,
+									   boolean srcSide, Divergence divergence)
+	{
+		if(divergence != null && divergence.IsJS())
+			return false;
+		boolean useL1 = (divergence == null);
+		long numLabels;
+		long width;
+		if(srcSide)
+		{
+			numLabels = nodeAligns.NumSrcItems();
+			width = nodeAligns.NumTgtIDs();
+		}
+		else
+		{
+			numLabels = nodeAligns.NumTgtItems();
+			width = nodeAligns.NumSrcIDs();
+		}
+		if(numLabels < 2 || width == 0)
+			return false;
+		long numSlots = (srcSide ? nodeAligns.NumSrcIDs() : nodeAligns.NumTgtIDs());
+		long cells = numSlots * (width + ROW_ALIGN) * (useL1 ? 1 : 2);
+		if(cells > MAX_CELLS)
+			return false;
+		double density = (double)nodeAligns.NumPairs() / (numLabels * width);
+		return (density >= MIN_DENSITY);
+	}
+
+
+	// HasVectorAPI function:
+	//    Whether the distances will be computed with SIMD instructions.
+	public static boolean HasVectorAPI()
+	{
+		return VECTOR_API;
+	}
+
+
+	// Update function:
+	//    Rebuilds the row for a label whose distribution has changed.
+	public void Update(int slot)
+	{
+		int base = slot * stride;
+		Arrays.fill(probs, base, base + stride, 0.0);
+		if(logs != null)
+			Arrays.fill(logs, base, base + stride, 0.0);
+		SparseDist dist = (srcSide ? nodeAligns.GetTGSDist(slot) :
+						   nodeAligns.GetSGTDist(slot));
+		if(useL1 || divergence.GetAlpha() == 0.0)
+		{
+			for(int i = 0; i < dist.Size(); i++)
+			{
+				probs[base + dist.IDAt(i)] = dist.ProbAt(i);
+				if(logs != null)
+					logs[base + dist.IDAt(i)] = dist.LogProbAt(i);
+			}
+			return;
+		}
+
+		// Smoothed: columns with no count get the same small probability,
+		// and then the counted ones are filled in over them:
+		int marginal = dist.Marginal();
+		int numCols = (srcSide ? nodeAligns.NumLiveTgtIDs() : nodeAligns.NumLiveSrcIDs());
+		double zeroProb = divergence.SmoothedProb(0, marginal, numCols);
+		double zeroLog = divergence.SmoothedLogProb(0, marginal, numCols);
+		for(int col = 0; col < width; col++)
+		{
+			if(srcSide ? nodeAligns.IsLiveTgtID(col) : nodeAligns.IsLiveSrcID(col))
+			{
+				probs[base + col] = zeroProb;
+				logs[base + col] = zeroLog;
+			}
+		}
+		for(int i = 0; i < dist.Size(); i++)
+		{
+			probs[base + dist.IDAt(i)] =
+				divergence.SmoothedProb(dist.CountAt(i), marginal, numCols);
+			logs[base + dist.IDAt(i)] =
+				divergence.SmoothedLogProb(dist.CountAt(i), marginal, numCols);
+		}
+	}
+
+	public void Update(int[] slots)
+	{
+		for(int slot : slots)
+			Update(slot);
+	}
+
+
+	// UpdateAll function:
+	//    Rebuilds every live label's row.
+	public void UpdateAll()
+	{
+		for(int slot = 0; slot < numSlots; slot++)
+			if(IsLive(slot))
+				Update(slot);
+	}
+
+
+
+	// Dist function:
+	//    L1 distance or KL divergence (whichever the rows were built for)
+	//    between the labels in two slots, to within Slack of the sparse
+	//    kernels' result.
+	public double Dist(int slot1, int slot2)
+	{
+		int off1 = slot1 * stride;
+		int off2 = slot2 * stride;
+		if(VECTOR_API)
+		{
+			if(useL1)
+				return VectorKernels.L1Dist(probs, off1, off2, stride);
+			else
+				return VectorKernels.KLDivergence(probs, logs, off1, off2, stride);
+		}
+
+		double diff = 0.0;
+		for(int i = 0; i < width; i++)
+		{
+			double p1 = probs[off1 + i];
+			double p2 = probs[off2 + i];
+			if(useL1)
+				diff += Math.abs(p1 - p2);
+			else if(p1 > 0.0 && p2 > 0.0)
+				diff += (p1 - p2) * (logs[off1 + i] - logs[off2 + i]);
+		}
+		return diff;
+	}
+
+
+	// Slack function:
+	//    How far a dense distance can be from the sparse one for the same
+	//    pair.  Rounding error is many orders of magnitude below this.
+	public static double Slack(double dist)
+	{
+		return 1e-9 * (1.0 + Math.abs(dist));
+	}
+
+
+	private boolean IsLive(int slot)
+	{
+		if(srcSide)
+			return nodeAligns.IsSrcItem(slot);
+		else
+			return nodeAligns.IsTgtItem(slot);
+	}
+
+
+	// Fraction of (label, other-side ID) cells that have to be non-zero
+	// for the dense rows to be used:
+	private static final double MIN_DENSITY = 0.25;
+	// Most doubles the rows may take up (512MB):
+	private static final long MAX_CELLS = 1L << 26;
+	private static final boolean VECTOR_API =
+		ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+
+	// Member variables:
+
+	private BidirCondCounts<String, String> nodeAligns;
+	private boolean srcSide;
+	private Divergence divergence;
+	private boolean useL1;
+	private int numSlots;
+	// Number of IDs on the other side, and that rounded up to ROW_ALIGN:
+	private int width;
+	private int stride;
+	// Each slot's row of probabilities, and of their base-2 logs for KL,
+	// slot-major:
+	private double[] probs;
+	private double[] logs;
+}
@@ -0,0 +1,412 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+// DistanceCache class:
+//    Keeps the pairwise distances by some CollapseMetric between all the
+//    labels on one side of a BidirCondCounts table across collapsing
+//    iterations.  Each label's interned ID is its slot; distances live in a
+//    triangular array indexed by slot pairs.  When two labels are merged,
+//    the merged label keeps the first label's ID and only that slot's row
+//    changes, so a whole run costs O(n^2) distance computations instead of
+//    O(n^3).  If the metric has a merge rule (see MergeRuleMetric), the
+//    row isn't even recomputed from the counts: each entry comes from the
+//    distances before the merge, and the cache keeps the labels' weights
+//    for the rule.
+//
+//    For a separable metric (see SeparableMetric), the cache also keeps
+//    each distance's integer sum, which doubles its memory but lets a merge
+//    on the other side be folded in with an O(1) correction per affected
+//    pair instead of a fresh distance computation.
+//
+//    The table has n (n - 1) / 2 entries for n IDs, so it can't be used
+//    for more than about 65,000 labels, and may not fit in the heap well
+//    before that; see Fits.
+public class DistanceCache implements PairSearch
+{
+	// Constructor:
+	//    Fills in the full distance table for the current source (or
+	//    target) labels of the given counts, which there mustn't be too
+	//    many of (see Fits).
+	public DistanceCache(BidirCondCounts<String, String> nodeAligns,
+						 boolean srcSide, CollapseMetric metric,
+						 LabelClusters clusters)
+	{
+		if(!Fits(nodeAligns, srcSide, metric, false))
+			throw new IllegalArgumentException("too many " + (srcSide ? "source" : "target") +
+											   " labels for a distance table");
+		this.nodeAligns = nodeAligns;
+		this.srcSide = srcSide;
+		this.metric = metric;
+		this.clusters = clusters;
+		if(srcSide)
+			numSlots = nodeAligns.NumSrcIDs();
+		else
+			numSlots = nodeAligns.NumTgtIDs();
+		numEvals = 0;
+
+		mergeRule = null;
+		weights = null;
+		if(metric instanceof MergeRuleMetric)
+		{
+			mergeRule = (MergeRuleMetric)metric;
+			weights = new double[numSlots];
+			for(int slot = 0; slot < numSlots; slot++)
+				if(IsLive(slot))
+					weights[slot] = mergeRule.Weight(nodeAligns, srcSide, slot);
+		}
+
+		// Compute the distance between every pair of live slots:
+		long n = numSlots;
+		dists = new double[(int)(n * (n - 1) / 2)];
+		separable = null;
+		sums = null;
+		if(metric instanceof SeparableMetric)
+		{
+			separable = (SeparableMetric)metric;
+			sums = new long[dists.length];
+		}
+		RecomputeAll();
+	}
+
+
+	// Fits function:
+	//    Whether the distance table for the labels on one side of the given
+	//    counts can be indexed with an int, and fits in the most heap the
+	//    JVM may grow to, along with the sums for a separable metric and,
+	//    if asked for, a NeighborQueueCache's queue.
+	public static boolean Fits(BidirCondCounts<String, String> nodeAligns,
+							   boolean srcSide, CollapseMetric metric,
+							   boolean withQueue)
+	{
+		long n = (srcSide ? nodeAligns.NumSrcIDs() : nodeAligns.NumTgtIDs());
+		long size = n * (n - 1) / 2;
+		if(size > MAX_TABLE_SIZE)
+			return false;
+		long bytes = size * (metric instanceof SeparableMetric ? 16 : 8);
+		if(withQueue)
+			bytes += NeighborQueueCache.QueueBytes(n);
+		return (bytes <= Runtime.getRuntime().maxMemory());
+	}
+
+
+	// NumEvals function:
+	//    Number of distances computed so far, including the initial table.
+	public long NumEvals()
+	{
+		return numEvals;
+	}
+
+
+	// FindMinPair function:
+	//    Scans the cached table for the closest pair of labels, breaking
+	//    ties the same way as LabelCollapser.GetMinDist does.  Returns
+	//    null if fewer than two labels are left.
+	public LabelPair FindMinPair()
+	{
+		long minKey = -1;
+		int minSlot1 = -1;
+		int minSlot2 = -1;
+		double minDiff = Double.MAX_VALUE;
+		for(int j = 1; j < numSlots; j++)
+		{
+			if(!IsLive(j))
+				continue;
+			int rowStart = Index(0, j);
+			for(int i = 0; i < j; i++)
+			{
+				if(!IsLive(i))
+					continue;
+				double diff = dists[rowStart + i];
+				if(diff > minDiff)
+					continue;
+				long key = clusters.PairKey(i, j);
+				if(minKey < 0 ||
+				   LabelCollapser.IsBetterPair(diff, key, minDiff, minKey))
+				{
+					minKey = key;
+					minSlot1 = i;
+					minSlot2 = j;
+					minDiff = diff;
+				}
+			}
+		}
+		if(minKey < 0)
+			return null;
+		return MakePair(minSlot1, minSlot2, minDiff);
+	}
+
+
+	// FindMutualPairs function:
+	//    Finds every pair of labels that are each other's nearest neighbor
+	//    (breaking ties as FindMinPair does) and are at most maxDist apart.
+	//    The pairs are disjoint, and come back in the order the greedy
+	//    collapse would take them, so the first one is the closest pair.
+	public List<LabelPair> FindMutualPairs(double maxDist)
+	{
+		int[] nearest = new int[numSlots];
+		Arrays.fill(nearest, -1);
+		for(int j = 1; j < numSlots; j++)
+		{
+			if(!IsLive(j))
+				continue;
+			for(int i = 0; i < j; i++)
+			{
+				if(!IsLive(i))
+					continue;
+				if(IsNearer(i, j, nearest[i]))
+					nearest[i] = j;
+				if(IsNearer(j, i, nearest[j]))
+					nearest[j] = i;
+			}
+		}
+		return MutualPairs(nearest, maxDist);
+	}
+
+
+	// MergeLabels function:
+	//    To be called after the two labels have been merged in the counts
+	//    table, which leaves the merged label in the first label's slot and
+	//    retires the second.  The merged slot's row of distances is
+	//    recomputed from the merged counts, or from the old rows by the
+	//    metric's merge rule.
+	public void MergeLabels(int slot, int deadSlot)
+	{
+		if(mergeRule == null)
+		{
+			RecomputeRow(slot);
+			return;
+		}
+
+		// The dead slot's distances are still in the table:
+		double dist12 = dists[Index(slot, deadSlot)];
+		for(int other = 0; other < numSlots; other++)
+		{
+			if(other == slot || !IsLive(other))
+				continue;
+			dists[Index(slot, other)] = mergeRule.MergedDist(
+				dists[Index(slot, other)], dists[Index(deadSlot, other)], dist12,
+				weights[slot], weights[deadSlot], weights[other]);
+		}
+		weights[slot] += weights[deadSlot];
+	}
+
+
+	// UpdatePairsAmong function:
+	//    Merging two labels on the opposite side collapses two coordinates
+	//    of every distribution on this side.  With a local metric, the
+	//    distance between two labels can only change if both of them had
+	//    mass on one of the merged coordinates, so the caller passes in the
+	//    IDs of the labels that did and only the pairs among those are
+	//    updated.  Otherwise the whole table is recomputed.
+	//
+	//    The labels' marginals don't change, so for a separable metric only
+	//    the two merged coordinates' terms of a pair's sum do, and they're
+	//    swapped for the merged coordinate's term in O(1) (see CorrectSum).
+	//    Other local metrics recompute the pairs.
+	public void UpdatePairsAmong(int[] changed, int[] counts1, int[] counts2)
+	{
+		if(!metric.IsLocal())
+		{
+			RecomputeAll();
+			return;
+		}
+		for(int a = 0; a < changed.length; a++)
+		{
+			for(int b = a + 1; b < changed.length; b++)
+			{
+				if(separable != null)
+					CorrectSum(changed[a], changed[b], counts1[a], counts2[a],
+							   counts1[b], counts2[b]);
+				else
+					Recompute(changed[a], changed[b]);
+			}
+		}
+	}
+
+
+	// CorrectSum function:
+	//    Updates the distance between the labels in two slots after two
+	//    coordinates, where they had counts a1 and a2 and b1 and b2, have
+	//    been merged.  For L1, in terms of probabilities, the new distance
+	//    is
+	//       d - |a1 - b1| - |a2 - b2| + |(a1 + a2) - (b1 + b2)|
+	//    and the sum changes the same way with each term scaled up by the
+	//    marginals.  The terms are integers, so the result is exact: it's
+	//    what the metric would give for the merged distributions.  Terms
+	//    aren't negative, so taking the old ones out first keeps every
+	//    step between 0 and the old or new sum; the steps are checked for
+	//    overflow all the same.
+	protected void CorrectSum(int slot1, int slot2, int a1, int a2, int b1, int b2)
+	{
+		long m1 = Marginal(slot1);
+		long m2 = Marginal(slot2);
+		int index = Index(slot1, slot2);
+		long sum = Math.subtractExact(sums[index], separable.Term(a1, b1, m1, m2));
+		sum = Math.subtractExact(sum, separable.Term(a2, b2, m1, m2));
+		sums[index] = Math.addExact(sum, separable.Term(a1 + a2, b1 + b2, m1, m2));
+		dists[index] = separable.DistFromSum(nodeAligns, sums[index], m1, m2);
+	}
+
+
+	protected void RecomputeAll()
+	{
+		for(int j = 1; j < numSlots; j++)
+		{
+			if(!IsLive(j))
+				continue;
+			for(int i = 0; i < j; i++)
+				if(IsLive(i))
+					Recompute(i, j);
+		}
+	}
+
+	protected void RecomputeRow(int slot)
+	{
+		for(int other = 0; other < numSlots; other++)
+		{
+			if(other == slot || !IsLive(other))
+				continue;
+			Recompute(slot, other);
+		}
+	}
+
+
+	// Recompute function:
+	//    Works out the distance between the labels in two slots from their
+	//    counts, and its sum too for a separable metric.
+	protected void Recompute(int slot1, int slot2)
+	{
+		numEvals++;
+		int index = Index(slot1, slot2);
+		if(separable == null)
+		{
+			dists[index] = metric.Dist(nodeAligns, srcSide, slot1, slot2);
+			return;
+		}
+		sums[index] = separable.Sum(Dist(slot1), Dist(slot2));
+		dists[index] = separable.DistFromSum(nodeAligns, sums[index],
+											 Marginal(slot1), Marginal(slot2));
+	}
+
+
+	// IsNearer function:
+	//    Whether the candidate slot is nearer to the given slot than the
+	//    current nearest one (-1 for none yet).
+	protected boolean IsNearer(int slot, int candidate, int current)
+	{
+		if(current < 0)
+			return true;
+		double diff = dists[Index(slot, candidate)];
+		double curDiff = dists[Index(slot, current)];
+		if(diff != curDiff)
+			return (diff < curDiff);
+		return LabelCollapser.IsBetterPair(diff, clusters.PairKey(slot, candidate),
+										   curDiff, clusters.PairKey(slot, current));
+	}
+
+
+	// MutualPairs function:
+	//    Picks the mutually nearest pairs out of the given nearest
+	//    neighbors, as FindMutualPairs returns them.
+	protected List<LabelPair> MutualPairs(int[] nearest, double maxDist)
+	{
+		List<LabelPair> pairs = new ArrayList<LabelPair>();
+		for(int slot = 0; slot < numSlots; slot++)
+		{
+			int other = nearest[slot];
+			if(!IsLive(slot) || other <= slot || nearest[other] != slot)
+				continue;
+			double diff = dists[Index(slot, other)];
+			if(diff > maxDist)
+				continue;
+			pairs.add(MakePair(slot, other, diff));
+		}
+		Collections.sort(pairs, new PairComparator());
+		return pairs;
+	}
+
+
+	// MakePair function:
+	//    The LabelPair for two slots.
+	protected LabelPair MakePair(int slot1, int slot2, double diff)
+	{
+		return new LabelPair(clusters, slot1, slot2, diff);
+	}
+
+
+	protected boolean IsLive(int slot)
+	{
+		if(srcSide)
+			return nodeAligns.IsSrcItem(slot);
+		else
+			return nodeAligns.IsTgtItem(slot);
+	}
+
+	protected SparseDist Dist(int slot)
+	{
+		if(srcSide)
+			return nodeAligns.GetTGSDist(slot);
+		else
+			return nodeAligns.GetSGTDist(slot);
+	}
+
+	protected int Marginal(int slot)
+	{
+		if(srcSide)
+			return nodeAligns.SrcCountByID(slot);
+		else
+			return nodeAligns.TgtCountByID(slot);
+	}
+
+	// Position of the (i, j) slot pair in the triangular array:
+	protected static int Index(int i, int j)
+	{
+		if(i > j)
+			return Index(j, i);
+		return (int)((long)j * (j - 1) / 2 + i);
+	}
+
+
+	// Largest number of entries a Java array can be relied on to hold:
+	private static final long MAX_TABLE_SIZE = Integer.MAX_VALUE - 8;
+
+
+	private static class PairComparator implements Comparator<LabelPair>
+	{
+		public int compare(LabelPair pair1, LabelPair pair2)
+		{
+			if(pair1.IsBetterThan(pair2))
+				return -1;
+			if(pair2.IsBetterThan(pair1))
+				return 1;
+			return 0;
+		}
+	}
+
+
+	// Member variables:
+
+	protected BidirCondCounts<String, String> nodeAligns;
+	protected boolean srcSide;
+	protected CollapseMetric metric;
+	// For breaking ties between equally distant pairs:
+	protected LabelClusters clusters;
+	// The metric again if it has a merge rule, or null, and the weight of
+	// each slot's label for the rule:
+	protected MergeRuleMetric mergeRule;
+	protected double[] weights;
+	// The metric again if it's separable, or null:
+	protected SeparableMetric separable;
+	// Number of IDs on this side when the cache was built; merges never
+	// add new ones:
+	protected int numSlots;
+	protected long numEvals;
+	// Lower triangle of the slot-by-slot distance matrix, and for a
+	// separable metric the distances' sums, or null:
+	protected double[] dists;
+	protected long[] sums;
+}
@@ -0,0 +1,227 @@
+// Divergence class:
+//    Symmetrized KL divergence or Jensen-Shannon divergence between the
+//    distributions of two labels on one side of a BidirCondCounts table,
+//    with add-alpha smoothing done analytically.  A label with counts c(j)
+//    and marginal m is treated as having the distribution
+//       q(j) = (c(j) + alpha) / (m + alpha * V)
+//    over the V labels currently on the other side, but the smoothed
+//    values are never stored: the columns where either label has a count
+//    are walked with a merge-join of the two sparse distributions, and
+//    the columns where neither does all contribute the same term, which
+//    is added in once, times their number.  So the count tables stay
+//    sparse, and a divergence costs time in the size of the two supports
+//    rather than in V.
+//
+//    With an alpha of 0, the KL divergence is taken over the shared
+//    support only, as SparseDist.KLDivergence does; the JS divergence is
+//    finite without smoothing.  Divergences are in bits, and come out
+//    bit-for-bit the same whichever way round the labels are given.
+//    Smoothing spreads mass over every label on the other side, so a
+//    smoothed divergence isn't local (see CollapseMetric.IsLocal).
+public class Divergence implements CollapseMetric
+{
+	public Divergence(boolean useJS, double alpha)
+	{
+		this.useJS = useJS;
+		this.alpha = alpha;
+
+		// Small counts are by far the most common, so keep their smoothed
+		// logs handy:
+		logCounts = new double[LOG_TABLE_SIZE];
+		for(int c = 0; c < LOG_TABLE_SIZE; c++)
+			logCounts[c] = Lg(c + alpha);
+	}
+
+
+	public boolean IsJS()
+	{
+		return useJS;
+	}
+
+	public double GetAlpha()
+	{
+		return alpha;
+	}
+
+
+	// Dist function:
+	//    Divergence between the source (or target) labels with the given
+	//    IDs, smoothed over the labels now on the other side.
+	public double Dist(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+					   int id1, int id2)
+	{
+		if(srcSide)
+			return Calc(nodeAligns.GetTGSDist(id1), nodeAligns.GetTGSDist(id2),
+						nodeAligns.NumLiveTgtIDs());
+		else
+			return Calc(nodeAligns.GetSGTDist(id1), nodeAligns.GetSGTDist(id2),
+						nodeAligns.NumLiveSrcIDs());
+	}
+
+	public double Calc(SparseDist dist1, SparseDist dist2, int numCols)
+	{
+		if(useJS)
+			return JSDivergence(dist1, dist2, numCols);
+		else if(alpha == 0.0)
+			return SparseDist.KLDivergence(dist1, dist2);
+		else
+			return KLDivergence(dist1, dist2, numCols);
+	}
+
+
+	public boolean IsLocal()
+	{
+		return (alpha == 0.0);
+	}
+
+
+	public int SettingsCode()
+	{
+		return (useJS ? 2 : 0);
+	}
+
+
+	// SmoothedProb/SmoothedLogProb functions:
+	//    A label's smoothed probability for a column it has the given count
+	//    in, and its base-2 log, for callers that lay the distribution out
+	//    densely.
+	public double SmoothedProb(int count, int marginal, int numCols)
+	{
+		return (count + alpha) / (marginal + alpha * numCols);
+	}
+
+	public double SmoothedLogProb(int count, int marginal, int numCols)
+	{
+		return LgCount(count) - Lg(marginal + alpha * numCols);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return (useJS ? "js" : "kl") + " with alpha " + alpha;
+	}
+
+
+	// KLDivergence function:
+	//    Symmetrized KL divergence of the smoothed distributions.  The two
+	//    directions' terms for a column add up to
+	//    (q1 - q2) * (lg q1 - lg q2); where neither label has a count, that
+	//    comes to alpha * (1/z1 - 1/z2) * (lg z2 - lg z1) for the smoothed
+	//    marginals z1 and z2.
+	private double KLDivergence(SparseDist dist1, SparseDist dist2, int numCols)
+	{
+		double z1 = dist1.Marginal() + alpha * numCols;
+		double z2 = dist2.Marginal() + alpha * numCols;
+		double lz1 = Lg(z1);
+		double lz2 = Lg(z2);
+		double diff = 0.0;
+		int numSeen = 0;
+		int i = 0;
+		int j = 0;
+		while(i < dist1.Size() || j < dist2.Size())
+		{
+			int c1 = 0;
+			int c2 = 0;
+			if(j == dist2.Size() ||
+			   (i < dist1.Size() && dist1.IDAt(i) < dist2.IDAt(j)))
+				c1 = dist1.CountAt(i++);
+			else if(i == dist1.Size() || dist2.IDAt(j) < dist1.IDAt(i))
+				c2 = dist2.CountAt(j++);
+			else
+			{
+				c1 = dist1.CountAt(i++);
+				c2 = dist2.CountAt(j++);
+			}
+			double q1 = (c1 + alpha) / z1;
+			double q2 = (c2 + alpha) / z2;
+			diff += (q1 - q2) * ((LgCount(c1) - lz1) - (LgCount(c2) - lz2));
+			numSeen++;
+		}
+
+		// All the columns neither label has a count in:
+		diff += (numCols - numSeen) * (alpha / z1 - alpha / z2) * (lz2 - lz1);
+		return diff;
+	}
+
+
+	// JSDivergence function:
+	//    Jensen-Shannon divergence of the smoothed distributions: the mean
+	//    KL divergence of each from their average.  For a column that's
+	//    1/2 (q1 lg q1 + q2 lg q2) - s/2 lg (s/2) with s = q1 + q2.
+	private double JSDivergence(SparseDist dist1, SparseDist dist2, int numCols)
+	{
+		double z1 = dist1.Marginal() + alpha * numCols;
+		double z2 = dist2.Marginal() + alpha * numCols;
+		double lz1 = Lg(z1);
+		double lz2 = Lg(z2);
+		double diff = 0.0;
+		int numSeen = 0;
+		int i = 0;
+		int j = 0;
+		while(i < dist1.Size() || j < dist2.Size())
+		{
+			int c1 = 0;
+			int c2 = 0;
+			if(j == dist2.Size() ||
+			   (i < dist1.Size() && dist1.IDAt(i) < dist2.IDAt(j)))
+				c1 = dist1.CountAt(i++);
+			else if(i == dist1.Size() || dist2.IDAt(j) < dist1.IDAt(i))
+				c2 = dist2.CountAt(j++);
+			else
+			{
+				c1 = dist1.CountAt(i++);
+				c2 = dist2.CountAt(j++);
+			}
+			diff += JSTerm((c1 + alpha) / z1, LgCount(c1) - lz1,
+						   (c2 + alpha) / z2, LgCount(c2) - lz2);
+			numSeen++;
+		}
+
+		// All the columns neither label has a count in:
+		if(alpha > 0.0)
+		{
+			diff += (numCols - numSeen) *
+				JSTerm(alpha / z1, Lg(alpha) - lz1, alpha / z2, Lg(alpha) - lz2);
+		}
+		return diff;
+	}
+
+	// One column's share of the JS divergence, given both probabilities
+	// and their logs; zero probabilities contribute nothing:
+	private static double JSTerm(double q1, double lq1, double q2, double lq2)
+	{
+		double half = (q1 + q2) / 2.0;
+		if(half == 0.0)
+			return 0.0;
+		double ent1 = (q1 > 0.0 ? q1 * lq1 : 0.0);
+		double ent2 = (q2 > 0.0 ? q2 * lq2 : 0.0);
+		return (ent1 + ent2) / 2.0 - half * Lg(half);
+	}
+
+
+	// lg(count + alpha):
+	private double LgCount(int count)
+	{
+		if(count < LOG_TABLE_SIZE)
+			return logCounts[count];
+		return Lg(count + alpha);
+	}
+
+	private static double Lg(double x)
+	{
+		return Math.log(x) / LOG_2;
+	}
+
+
+	private static final double LOG_2 = Math.log(2.0);
+	private static final int LOG_TABLE_SIZE = 4096;
+
+
+	// Member variables:
+
+	private boolean useJS;
+	private double alpha;
+	// lg(c + alpha) for counts c below LOG_TABLE_SIZE:
+	private double[] logCounts;
+}
@@ -0,0 +1,168 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+
+// ExtractLabelMaps class:
+//    Companion to LabelCollapser's "--output history" mode.  Reads a merge
+//    history in one streaming pass and writes the source and target label
+//    maps (in the same "original <tab> collapsed" format as the collapse
+//    tables) at each requested cut point, either after a given number of
+//    iterations or once the total number of source plus target clusters is
+//    down to a given size.  That isn't what LabelCollapser's
+//    "--stop labels" counts, which is joint (src, tgt) labels: the history
+//    doesn't keep the counts needed to tell how many of those are left.
+public class ExtractLabelMaps
+{
+	public static void main(String[] args)
+	{
+		if(args.length != 4)
+		{
+			PrintUsage();
+			return;
+		}
+		String historyFile = args[0];
+		String outPrefix = args[1];
+		boolean useIters = true;
+		if(args[2].toLowerCase().equals("clusters"))
+			useIters = false;
+		else if(!args[2].toLowerCase().equals("iters"))
+		{
+			PrintUsage();
+			return;
+		}
+		String[] fields = args[3].split(",");
+		int[] cuts = new int[fields.length];
+		for(int i = 0; i < fields.length; i++)
+			cuts[i] = Integer.parseInt(fields[i]);
+
+		// Iteration cuts are met in increasing order, cluster-count cuts in
+		// decreasing order:
+		Arrays.sort(cuts);
+		if(!useIters)
+		{
+			for(int i = 0; i < cuts.length / 2; i++)
+			{
+				int tmp = cuts[i];
+				cuts[i] = cuts[cuts.length - 1 - i];
+				cuts[cuts.length - 1 - i] = tmp;
+			}
+		}
+
+		try
+		{
+			Extract(historyFile, outPrefix, useIters, cuts);
+		}
+		catch(FileNotFoundException e)
+		{
+			System.err.println("Input file " + historyFile + " wasn't found!");
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error reading history or writing maps: " +
+							   e.getMessage());
+		}
+	}
+
+
+	public static void PrintUsage()
+	{
+		System.err.println("Usage:  java ExtractLabelMaps " +
+				"<history-file> <out-prefix> <cut-type> <cuts>\n");
+		System.err.println("<cut-type> : 'iters' to cut after the given numbers of iterations");
+		System.err.println("             'clusters' to cut once there are at most the given numbers of source");
+		System.err.println("             plus target clusters (not joint labels, as '--stop labels' counts)");
+		System.err.println("<cuts>     : comma-separated list, such as '500,1000,2067'");
+		System.err.println("Maps go to <out-prefix>-it<n>.{src,tgt} or <out-prefix>-clusters<n>.{src,tgt}");
+	}
+
+
+	// Extract function:
+	//    Replays the merges in the history file, writing label maps at each
+	//    cut point as it's passed.
+	public static void Extract(String historyFile, String outPrefix,
+							   boolean useIters, int[] cuts)
+	throws FileNotFoundException, IOException
+	{
+		LabelClusters src = new LabelClusters();
+		LabelClusters tgt = new LabelClusters();
+		int nextCut = 0;
+		int iteration = 0;
+		boolean startedMerges = false;
+
+		BufferedReader reader = new BufferedReader(new FileReader(historyFile));
+		String line;
+		while((line = reader.readLine()) != null)
+		{
+			String[] columns = line.split("\t");
+			if(columns[0].equals("S"))
+				src.AddLabel(Integer.parseInt(columns[1]), columns[2]);
+			else if(columns[0].equals("T"))
+				tgt.AddLabel(Integer.parseInt(columns[1]), columns[2]);
+			else if(columns[0].equals("M"))
+			{
+				// The initial state counts as a cut point too:
+				if(!startedMerges)
+				{
+					nextCut = WriteCuts(src, tgt, outPrefix, useIters, cuts,
+										nextCut, 0);
+					startedMerges = true;
+				}
+				iteration = Integer.parseInt(columns[1]);
+				LabelClusters side = (columns[2].equals("S") ? src : tgt);
+				side.Merge(Integer.parseInt(columns[3]),
+						   Integer.parseInt(columns[4]));
+				nextCut = WriteCuts(src, tgt, outPrefix, useIters, cuts,
+									nextCut, iteration);
+			}
+		}
+		reader.close();
+		if(!startedMerges)
+			nextCut = WriteCuts(src, tgt, outPrefix, useIters, cuts, nextCut, 0);
+
+		for(int i = nextCut; i < cuts.length; i++)
+			System.err.println("Run ended before cut point " + cuts[i] +
+							   "; no maps written for it.");
+	}
+
+
+	// WriteCuts function:
+	//    Writes maps for every cut point the run has now reached.  Returns
+	//    the index of the next cut point still to come.
+	private static int WriteCuts(LabelClusters src, LabelClusters tgt, String outPrefix,
+								 boolean useIters, int[] cuts, int nextCut,
+								 int iteration)
+	throws IOException
+	{
+		while(nextCut < cuts.length)
+		{
+			String name;
+			if(useIters && iteration == cuts[nextCut])
+				name = outPrefix + "-it" + cuts[nextCut];
+			else if(!useIters &&
+					src.NumLive() + tgt.NumLive() <= cuts[nextCut])
+				name = outPrefix + "-clusters" + cuts[nextCut];
+			else
+				break;
+			WriteMap(src, name + ".src");
+			WriteMap(tgt, name + ".tgt");
+			nextCut++;
+		}
+		return nextCut;
+	}
+
+
+	private static void WriteMap(LabelClusters clusters, String fileName)
+	throws IOException
+	{
+		PrintStream out = new PrintStream(new BufferedOutputStream(
+			new FileOutputStream(fileName)));
+		clusters.Print(out);
+		out.close();
+	}
+}
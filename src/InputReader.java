@@ -1,9 +1,21 @@
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,8 +38,7 @@ public class InputReader
 	throws FileNotFoundException
 	{
 		// Open file:
-		BufferedReader srReader =
-			new BufferedReader(new FileReader(srFile));
+		BufferedReader srReader = OpenInput(srFile);
 		
 		// Loop over entries in the ScorableRule file:
 		System.err.println("Reading ScorableRule file...");
@@ -62,33 +73,11 @@ public class InputReader
 			else
 			{
 				// Have to parse out the LHS column into src and tgt side:
-				String srcLHS = "";
-				String tgtLHS = "";
-				if(columns[1].contains("::::"))
-				{
-					srcLHS = ":";
-                    tgtLHS = ":";
-				}
-				else if(columns[1].startsWith("[:::"))
-				{
-					srcLHS = ":";
-					tgtLHS = columns[1].substring(4, columns[1].indexOf("]"));
-				}
-				else if(columns[1].endsWith(":::]"))
-				{
-					srcLHS = columns[1].substring(1, columns[1].indexOf(":"));
-					tgtLHS = ":";
-				}
-				else
-				{
-					String[] lhsFields = columns[1].split("]|\\[|(::)");
-					srcLHS = lhsFields[1];
-					tgtLHS = lhsFields[2];
-				}
+				String[] lhs = ParseLHS(columns[1]);
 
 				// Add alignment counts to stored distribution:
-				if(!srcLHS.equals("") && !tgtLHS.equals(""))
-				dataTables.AddCount(srcLHS, tgtLHS, 1);
+				if(lhs != null)
+					dataTables.AddCount(lhs[0], lhs[1], 1);
 			}
 			
 			// Read next line:
@@ -120,6 +109,147 @@ public class InputReader
 		}
 	}
 
+
+	// FillFromScorableRuleFileParallel function:
+	//    Same as FillFromScorableRuleFile, but the file is split into byte
+	//    ranges that are read at the same time by SRChunkReaders on the
+	//    given pool.  Each reader counts LHSs into its own table; the tables
+	//    are merged into the distribution tables at the end, in file order,
+	//    so the result is the same as reading the file sequentially.
+	public static void
+	FillFromScorableRuleFileParallel(BidirCondCounts<String, String> dataTables,
+									 String srFile, boolean includeLex,
+									 boolean includePhr, boolean includeGra,
+									 ExecutorService pool, int numChunks)
+	throws FileNotFoundException
+	{
+		// Compressed files and pipes can only be read from the start:
+		if(!IsRandomAccess(srFile))
+		{
+			FillFromScorableRuleFile(dataTables, srFile, includeLex,
+									 includePhr, includeGra);
+			return;
+		}
+		File file = new File(srFile);
+
+		// Split the file into ranges, a few per thread so that a slow range
+		// doesn't hold everyone up, but not so small that they're mostly
+		// overhead:
+		long length = file.length();
+		long chunkSize = Math.max((length + numChunks - 1) / numChunks, 1 << 20);
+		List<SRChunkReader> readers = new ArrayList<SRChunkReader>();
+		for(long start = 0; start < length; start += chunkSize)
+		{
+			readers.add(new SRChunkReader(srFile, start,
+										  Math.min(start + chunkSize, length),
+										  includeLex, includePhr, includeGra));
+		}
+
+		System.err.println("Reading ScorableRule file in " + readers.size() +
+						   " chunks...");
+		List<Future<Map<String, int[]>>> results;
+		try
+		{
+			results = pool.invokeAll(readers);
+		}
+		catch(InterruptedException e)
+		{
+			// Leave the interrupt for the caller to see:
+			Thread.currentThread().interrupt();
+			System.err.println("Interrupted while reading input file!");
+			return;
+		}
+
+		// Merge the readers' tables:
+		for(Future<Map<String, int[]>> result : results)
+		{
+			Map<String, int[]> lhsCounts;
+			try
+			{
+				lhsCounts = result.get();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				System.err.println("Interrupted while reading input file!");
+				return;
+			}
+			catch(ExecutionException e)
+			{
+				System.err.println("Error reading from input file!");
+				return;
+			}
+			for(Map.Entry<String, int[]> entry : lhsCounts.entrySet())
+			{
+				String[] lhs = ParseLHS(entry.getKey());
+				if(lhs != null)
+					dataTables.AddCount(lhs[0], lhs[1], entry.getValue()[0]);
+			}
+		}
+	}
+
+
+	// ParseLHS function:
+	//    Splits a ScorableRule LHS column such as "[NP::NP]" into its source
+	//    and target labels.  Returns null if either one is missing.
+	public static String[] ParseLHS(String lhs)
+	{
+		String srcLHS = "";
+		String tgtLHS = "";
+		if(lhs.contains("::::"))
+		{
+			srcLHS = ":";
+			tgtLHS = ":";
+		}
+		else if(lhs.startsWith("[:::"))
+		{
+			srcLHS = ":";
+			if(lhs.indexOf("]") >= 4)
+				tgtLHS = lhs.substring(4, lhs.indexOf("]"));
+		}
+		else if(lhs.endsWith(":::]"))
+		{
+			if(lhs.indexOf(":") >= 1)
+				srcLHS = lhs.substring(1, lhs.indexOf(":"));
+			tgtLHS = ":";
+		}
+		else
+		{
+			// Second and third fields, splitting on "[", "]" and "::":
+			int end = LHSFieldEnd(lhs, 0);
+			if(end < lhs.length())
+			{
+				int start = end + (lhs.charAt(end) == ':' ? 2 : 1);
+				end = LHSFieldEnd(lhs, start);
+				srcLHS = lhs.substring(start, end);
+				if(end < lhs.length())
+				{
+					start = end + (lhs.charAt(end) == ':' ? 2 : 1);
+					end = LHSFieldEnd(lhs, start);
+					tgtLHS = lhs.substring(start, end);
+				}
+			}
+		}
+
+		if(srcLHS.equals("") || tgtLHS.equals(""))
+			return null;
+		return new String[] {srcLHS, tgtLHS};
+	}
+
+	// Position of the next "[", "]" or "::" at or after from, or the
+	// length of the LHS if there isn't one:
+	private static int LHSFieldEnd(String lhs, int from)
+	{
+		for(int i = from; i < lhs.length(); i++)
+		{
+			char c = lhs.charAt(i);
+			if(c == '[' || c == ']' ||
+			   (c == ':' && i + 1 < lhs.length() && lhs.charAt(i + 1) == ':'))
+				return i;
+		}
+		return lhs.length();
+	}
+
 	
 	// FillFromOnelineFile function:
 	//    Adds to the given distribution tables the counts of labels
@@ -137,8 +267,7 @@ public class InputReader
 	throws FileNotFoundException
 	{
 		// Open file:
-		BufferedReader onelineReader =
-			new BufferedReader(new FileReader(onelineFile));
+		BufferedReader onelineReader = OpenInput(onelineFile);
 		
 		// Loop over entries in the oneline file:
 		System.err.println("Reading oneline file...");
@@ -206,8 +335,7 @@ public class InputReader
 	throws FileNotFoundException
 	{
 		// Open file:
-		BufferedReader lineReader =
-			new BufferedReader(new FileReader(countsFile));
+		BufferedReader lineReader = OpenInput(countsFile);
 		
 		// Loop over entries in the counts file:
 		System.err.println("Reading counts file...");
@@ -248,7 +376,6 @@ public class InputReader
 				System.err.println("Error reading from input file!");
 				return;
 			}
-			lineNum++;
 			
 			// Print periodic progress message:
 			lineNum++;
@@ -269,6 +396,159 @@ public class InputReader
 	}
 
 
+	// FillFromCountsFileMapped function:
+	//    Same as FillFromCountsFile, but for large files: the file is
+	//    memory-mapped and scanned for tabs and newlines directly.  Counts
+	//    are decoded from the bytes and labels are looked up in byte-keyed
+	//    tables, so a String is only made the first time a label is seen.
+	public static void
+	FillFromCountsFileMapped(BidirCondCounts<String, String> dataTables,
+							 String countsFile)
+	throws FileNotFoundException
+	{
+		// Compressed files and pipes can't be mapped:
+		if(!IsRandomAccess(countsFile))
+		{
+			FillFromCountsFile(dataTables, countsFile);
+			return;
+		}
+		File file = new File(countsFile);
+
+		System.err.println("Reading counts file...");
+		ByteLabelTable srcLabels = new ByteLabelTable();
+		ByteLabelTable tgtLabels = new ByteLabelTable();
+		int lineNum = 1;
+		try
+		{
+			FileChannel channel = FileChannel.open(file.toPath(),
+												   StandardOpenOption.READ);
+			long length = channel.size();
+			long segStart = 0;
+			while(segStart < length)
+			{
+				// Map as much as a buffer can hold; a line that runs off the
+				// end of this mapping is picked up again by the next one:
+				int segLen = (int)Math.min(MAX_MAPPING, length - segStart);
+				boolean lastSeg = (segStart + segLen == length);
+				MappedByteBuffer buffer =
+					channel.map(FileChannel.MapMode.READ_ONLY, segStart, segLen);
+				int lineStart = 0;
+				while(lineStart < segLen)
+				{
+					int lineEnd = lineStart;
+					while(lineEnd < segLen && buffer.get(lineEnd) != '\n')
+						lineEnd++;
+					if(lineEnd == segLen && !lastSeg)
+						break;
+
+					AddCountsLine(dataTables, buffer, lineStart, lineEnd,
+								  srcLabels, tgtLabels, lineNum);
+					lineStart = lineEnd + 1;
+
+					// Print periodic progress message:
+					lineNum++;
+					if(lineNum % 1000000 == 0)
+						System.err.println("Read " + lineNum + " lines");
+				}
+				if(lineStart == 0 && !lastSeg)
+				{
+					System.err.println("Line too long in input file : l." +
+									   lineNum + " !");
+					break;
+				}
+				segStart += lineStart;
+			}
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error reading from input file : l." +
+					lineNum + " !");
+			return;
+		}
+	}
+
+	// Adds the count from one line of a counts file, in buffer[start, end).
+	// The line is trimmed and split on tabs, as in FillFromCountsFile;
+	// lines without three non-empty columns are skipped, and so are lines
+	// whose count isn't an int, with a message.
+	private static void
+	AddCountsLine(BidirCondCounts<String, String> dataTables, ByteBuffer buffer,
+				  int start, int end, ByteLabelTable srcLabels,
+				  ByteLabelTable tgtLabels, int lineNum)
+	{
+		while(start < end && (buffer.get(start) & 0xff) <= ' ')
+			start++;
+		while(end > start && (buffer.get(end - 1) & 0xff) <= ' ')
+			end--;
+
+		// Find the first three columns:
+		int tab1 = start;
+		while(tab1 < end && buffer.get(tab1) != '\t')
+			tab1++;
+		int tab2 = tab1 + 1;
+		while(tab2 < end && buffer.get(tab2) != '\t')
+			tab2++;
+		int tab3 = tab2 + 1;
+		while(tab3 < end && buffer.get(tab3) != '\t')
+			tab3++;
+		if(tab2 >= end || tab1 == start || tab2 == tab1 + 1 || tab3 == tab2 + 1)
+			return;
+
+		// Decode the count, stopping as soon as it's out of an int's range:
+		int pos = tab2 + 1;
+		boolean negative = (buffer.get(pos) == '-');
+		if(negative || buffer.get(pos) == '+')
+			pos++;
+		long limit = (negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE);
+		boolean valid = (pos < tab3);
+		boolean inRange = true;
+		long count = 0;
+		for(; valid && inRange && pos < tab3; pos++)
+		{
+			int digit = buffer.get(pos) - '0';
+			valid = (digit >= 0 && digit <= 9);
+			count = count * 10 + digit;
+			inRange = (count <= limit);
+		}
+		if(!valid)
+		{
+			System.err.println("Malformatted count : l." + lineNum + " !");
+			return;
+		}
+		if(!inRange)
+		{
+			System.err.println("Count out of range : l." + lineNum + " !");
+			return;
+		}
+		if(negative)
+			count = -count;
+
+		int src = srcLabels.Get(buffer, start, tab1);
+		if(src == ByteLabelTable.MISSING)
+		{
+			src = dataTables.InternSrc(DecodeLabel(buffer, start, tab1));
+			srcLabels.Put(buffer, start, tab1, src);
+		}
+		int tgt = tgtLabels.Get(buffer, tab1 + 1, tab2);
+		if(tgt == ByteLabelTable.MISSING)
+		{
+			tgt = dataTables.InternTgt(DecodeLabel(buffer, tab1 + 1, tab2));
+			tgtLabels.Put(buffer, tab1 + 1, tab2, tgt);
+		}
+		dataTables.AddCountByID(src, tgt, (int)count);
+	}
+
+	// Decodes buffer[start, end) the same way FileReader would:
+	private static String DecodeLabel(ByteBuffer buffer, int start, int end)
+	{
+		byte[] bytes = new byte[end - start];
+		for(int i = start; i < end; i++)
+			bytes[i - start] = buffer.get(i);
+		return new String(bytes);
+	}
+
+
 	// FillFromMosesFiles function:
 	//    Adds to the given distribution tables the POS alignments specified
 	//    by a Moses alignment file and source and target parse trees.
@@ -286,12 +566,9 @@ public class InputReader
 			Pattern.compile("\\(([^\\(\\)]+) ([^\\(\\)]+)\\)");
 
 		// Open files:
-		BufferedReader srcReader =
-			new BufferedReader(new FileReader(srcParseFile));
-		BufferedReader tgtReader =
-			new BufferedReader(new FileReader(tgtParseFile));
-		BufferedReader alignReader =
-			new BufferedReader(new FileReader(mosesAlignsFile));
+		BufferedReader srcReader = OpenInput(srcParseFile);
+		BufferedReader tgtReader = OpenInput(tgtParseFile);
+		BufferedReader alignReader = OpenInput(mosesAlignsFile);
 		
 		// Loop over sentences:
 		System.err.println("Reading trees and Moses files...");
@@ -384,4 +661,65 @@ public class InputReader
 		}
 	}
 
+
+	// OpenInput function:
+	//    Opens an input file for reading line by line.  The file name "-"
+	//    means standard input.  Standard input and gzipped files are read
+	//    through a PipelinedInputStream, so that reading and inflating
+	//    happen on another thread while the caller parses.
+	public static BufferedReader OpenInput(String fileName)
+	throws FileNotFoundException
+	{
+		if(fileName.equals(STDIN_NAME))
+		{
+			return new BufferedReader(new InputStreamReader(
+				new PipelinedInputStream(System.in)));
+		}
+		if(IsGzipped(fileName))
+		{
+			return new BufferedReader(new InputStreamReader(
+				new PipelinedInputStream(new FileInputStream(fileName))));
+		}
+		return new BufferedReader(new FileReader(fileName));
+	}
+
+
+	// IsRandomAccess function:
+	//    Whether the input is a plain file that can be read in parallel
+	//    ranges or memory-mapped, rather than standard input or a gzipped
+	//    file.  Throws if the file doesn't exist.
+	public static boolean IsRandomAccess(String fileName)
+	throws FileNotFoundException
+	{
+		if(fileName.equals(STDIN_NAME))
+			return false;
+		if(!new File(fileName).isFile())
+			throw new FileNotFoundException(fileName);
+		return !IsGzipped(fileName);
+	}
+
+	private static boolean IsGzipped(String fileName)
+	throws FileNotFoundException
+	{
+		PushbackInputStream in =
+			new PushbackInputStream(new FileInputStream(fileName), 2);
+		try
+		{
+			boolean gzipped = PipelinedInputStream.IsGzipped(in);
+			in.close();
+			return gzipped;
+		}
+		catch(IOException e)
+		{
+			// Let the reader report it:
+			return false;
+		}
+	}
+
+
+	// Largest piece of a file that FillFromCountsFileMapped maps at once:
+	private static final int MAX_MAPPING = Integer.MAX_VALUE;
+
+	// File name that means standard input:
+	private static final String STDIN_NAME = "-";
 }
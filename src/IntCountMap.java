@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+
+// IntCountMap class:
+//    Open-addressing hash map from non-negative int keys to int counts,
+//    used for the rows of BidirCondCounts so that no Integer objects are
+//    stored per (src, tgt) cell.  Linear probing; removals shift later
+//    entries back so that no tombstones are needed.
+//
+//    Entries can be walked with Capacity(), KeyAt() and ValueAt(); slots
+//    whose key is EMPTY are unused.
+public class IntCountMap
+{
+	public static final int EMPTY = -1;
+
+
+	public IntCountMap()
+	{
+		this(4);
+	}
+
+	public IntCountMap(int expectedSize)
+	{
+		int capacity = 4;
+		while(capacity * 3 < expectedSize * 4)
+			capacity *= 2;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+
+	public int Size()
+	{
+		return size;
+	}
+
+	public int Capacity()
+	{
+		return keys.length;
+	}
+
+	public int KeyAt(int slot)
+	{
+		return keys[slot];
+	}
+
+	public int ValueAt(int slot)
+	{
+		return values[slot];
+	}
+
+
+	public boolean ContainsKey(int key)
+	{
+		return (keys[Find(key)] == key);
+	}
+
+
+	// Get function:
+	//    Returns the count for the key, or 0 if it isn't in the map.
+	public int Get(int key)
+	{
+		int slot = Find(key);
+		if(keys[slot] == key)
+			return values[slot];
+		return 0;
+	}
+
+
+	// Add function:
+	//    Adds the given amount to the key's count, inserting it if needed.
+	//    Returns the new count.
+	public int Add(int key, int count)
+	{
+		int slot = Find(key);
+		if(keys[slot] == key)
+		{
+			values[slot] += count;
+			return values[slot];
+		}
+
+		// New key; grow first if the table is getting full:
+		if((size + 1) * 4 > keys.length * 3)
+		{
+			Rehash(keys.length * 2);
+			slot = Find(key);
+		}
+		keys[slot] = key;
+		values[slot] = count;
+		size++;
+		return count;
+	}
+
+
+	// Remove function:
+	//    Takes the key out of the map and returns its count (0 if it wasn't
+	//    there).
+	public int Remove(int key)
+	{
+		int slot = Find(key);
+		if(keys[slot] != key)
+			return 0;
+		int count = values[slot];
+		size--;
+
+		// Shift back any later entries in the same probe run:
+		int mask = keys.length - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while(keys[next] != EMPTY)
+		{
+			int home = Hash(keys[next]) & mask;
+			if(((next - home) & mask) >= ((next - hole) & mask))
+			{
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[hole] = EMPTY;
+		return count;
+	}
+
+
+	// Keys function:
+	//    Returns a fresh array of all keys in the map, in slot order.
+	public int[] Keys()
+	{
+		int[] result = new int[size];
+		int n = 0;
+		for(int slot = 0; slot < keys.length; slot++)
+			if(keys[slot] != EMPTY)
+				result[n++] = keys[slot];
+		return result;
+	}
+
+
+	// Slot holding the key, or the empty slot where it would go:
+	private int Find(int key)
+	{
+		int mask = keys.length - 1;
+		int slot = Hash(key) & mask;
+		while(keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void Rehash(int capacity)
+	{
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		for(int slot = 0; slot < oldKeys.length; slot++)
+		{
+			if(oldKeys[slot] == EMPTY)
+				continue;
+			int newSlot = Find(oldKeys[slot]);
+			keys[newSlot] = oldKeys[slot];
+			values[newSlot] = oldValues[slot];
+		}
+	}
+
+	private static int Hash(int key)
+	{
+		// Spread dense IDs out over the table:
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16));
+	}
+
+
+	// Member variables:
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+}
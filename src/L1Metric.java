@@ -0,0 +1,55 @@
+// L1Metric class:
+//    L1 distance between two labels' normalized distributions, the
+//    original collapse metric.  It's a true metric, so PivotIndex can prune
+//    searches with it, and it's at most 2.0.  It's worked out exactly from
+//    the counts (see SparseDist.L1Dist), which makes it separable: each
+//    column's term is |count1 * marginal2 - count2 * marginal1|.
+public class L1Metric implements SeparableMetric
+{
+	public double Dist(BidirCondCounts<String, String> nodeAligns,
+					   boolean srcSide, int id1, int id2)
+	{
+		if(srcSide)
+			return nodeAligns.CalcTGSL1Dist(id1, id2);
+		else
+			return nodeAligns.CalcSGTL1Dist(id1, id2);
+	}
+
+
+	public long Sum(SparseDist dist1, SparseDist dist2)
+	{
+		return SparseDist.L1Numerator(dist1, dist2);
+	}
+
+
+	public long Term(long count1, long count2, long marginal1, long marginal2)
+	{
+		return Math.abs(count1 * marginal2 - count2 * marginal1);
+	}
+
+
+	public double DistFromSum(BidirCondCounts<String, String> nodeAligns,
+							  long sum, long marginal1, long marginal2)
+	{
+		return SparseDist.L1FromNumerator(sum, marginal1, marginal2);
+	}
+
+
+	public boolean IsLocal()
+	{
+		return true;
+	}
+
+
+	public int SettingsCode()
+	{
+		return 1;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "l1";
+	}
+}
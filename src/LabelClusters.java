@@ -0,0 +1,202 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+// LabelClusters class:
+//    The clusters of original labels on one side of a collapse, by interned
+//    ID.  A cluster is known by the ID of its first member, which is also
+//    the ID the counts table keeps it under.  Each cluster is a linked list
+//    of its members' IDs, so merging two clusters appends the second's
+//    members to the first's in O(1); the "A|B|C" names are only built when
+//    a table is printed.
+//
+//    Clusters built from a counts table are also ranked, for the collapse
+//    engines' tie-breaks, in the lexicographic order of their names.  A
+//    name is its first member's label, followed by "|" and more if the
+//    cluster has grown, so (as long as labels don't contain "|") comparing
+//    two names comes down to comparing their first labels, or first labels
+//    with "|" on the end.  Both are ranked up front, and a cluster only
+//    switches from one rank to the other once, when it first grows.
+public class LabelClusters
+{
+	// Constructor:
+	//    No clusters yet; they're added one label at a time with AddLabel.
+	public LabelClusters()
+	{
+		labels = new String[16];
+		next = new int[16];
+		tail = new int[16];
+		live = new boolean[16];
+		numLive = 0;
+		ranks = null;
+	}
+
+
+	// Constructor:
+	//    A cluster of its own for each of the current source (or target)
+	//    labels of the given counts, ranked.
+	public LabelClusters(BidirCondCounts<String, String> nodeAligns, boolean srcSide)
+	{
+		this();
+		int numIDs = (srcSide ? nodeAligns.NumSrcIDs() : nodeAligns.NumTgtIDs());
+		int[] ids = new int[numIDs];
+		int numLabels = 0;
+		for(int id = 0; id < numIDs; id++)
+		{
+			if(srcSide && nodeAligns.IsSrcItem(id))
+				AddLabel(id, nodeAligns.GetSrcLabel(id));
+			else if(!srcSide && nodeAligns.IsTgtItem(id))
+				AddLabel(id, nodeAligns.GetTgtLabel(id));
+			else
+				continue;
+			ids[numLabels++] = id;
+		}
+
+		// Rank the labels alone and with "|" on the end together:
+		String[] keys = new String[2 * labels.length];
+		Integer[] order = new Integer[2 * numLabels];
+		for(int i = 0; i < numLabels; i++)
+		{
+			int id = ids[i];
+			keys[2 * id] = labels[id];
+			keys[2 * id + 1] = labels[id] + "|";
+			order[2 * i] = 2 * id;
+			order[2 * i + 1] = 2 * id + 1;
+		}
+		Arrays.sort(order, new KeyComparator(keys));
+		ranks = new int[2 * labels.length];
+		for(int r = 0; r < order.length; r++)
+			ranks[order[r]] = r;
+	}
+
+
+	public void AddLabel(int id, String label)
+	{
+		if(id >= labels.length)
+		{
+			int capacity = Math.max(id + 1, labels.length * 2);
+			labels = Arrays.copyOf(labels, capacity);
+			next = Arrays.copyOf(next, capacity);
+			tail = Arrays.copyOf(tail, capacity);
+			live = Arrays.copyOf(live, capacity);
+		}
+		labels[id] = label;
+		next[id] = -1;
+		tail[id] = id;
+		live[id] = true;
+		numLive++;
+	}
+
+
+	// Merge function:
+	//    Appends cluster id2's members to cluster id1's, so the merged
+	//    cluster's name is id1's name, "|", then id2's.  id2 is retired.
+	public void Merge(int id1, int id2)
+	{
+		next[tail[id1]] = id2;
+		tail[id1] = tail[id2];
+		live[id2] = false;
+		numLive--;
+	}
+
+
+	public int NumLive()
+	{
+		return numLive;
+	}
+
+
+	// PairKey function:
+	//    A key for the pair of clusters with the given IDs, for breaking
+	//    ties between equally distant pairs: keys compare as the pairs of
+	//    ranks would, lower-ranked cluster first.  Only for ranked clusters.
+	public long PairKey(int id1, int id2)
+	{
+		long rank1 = Rank(id1);
+		long rank2 = Rank(id2);
+		if(rank1 < rank2)
+			return (rank1 << 32) | rank2;
+		else
+			return (rank2 << 32) | rank1;
+	}
+
+
+	// IsFirst function:
+	//    Whether the cluster with the first ID ranks before the one with
+	//    the second, and so goes first in their merged name.
+	public boolean IsFirst(int id1, int id2)
+	{
+		return (Rank(id1) < Rank(id2));
+	}
+
+
+	// Name function:
+	//    The cluster's members' labels joined with "|".
+	public String Name(int id)
+	{
+		StringBuilder name = new StringBuilder(labels[id]);
+		for(int m = next[id]; m >= 0; m = next[m])
+			name.append('|').append(labels[m]);
+		return name.toString();
+	}
+
+
+	// Print function:
+	//    Writes a line "original <tab> collapsed" for every original label,
+	//    cluster by cluster in ID order.
+	public void Print(PrintStream out)
+	{
+		for(int id = 0; id < labels.length; id++)
+		{
+			if(!live[id])
+				continue;
+			String collapsed = Name(id);
+			for(int m = id; m >= 0; m = next[m])
+				out.println(labels[m] + "\t" + collapsed);
+		}
+	}
+
+
+	// Rank of the cluster's name: its first label's alone, or with "|" on
+	// the end once it has more than one member:
+	private int Rank(int id)
+	{
+		if(next[id] < 0)
+			return ranks[2 * id];
+		else
+			return ranks[2 * id + 1];
+	}
+
+
+	private static class KeyComparator implements Comparator<Integer>
+	{
+		public KeyComparator(String[] keys)
+		{
+			this.keys = keys;
+		}
+
+		public int compare(Integer i, Integer j)
+		{
+			return keys[i].compareTo(keys[j]);
+		}
+
+		private String[] keys;
+	}
+
+
+	// Member variables:
+
+	// Original label of each ID:
+	private String[] labels;
+	// Next member of the same cluster after each ID (-1 for none), and the
+	// last member of each cluster, by its first member's ID:
+	private int[] next;
+	private int[] tail;
+	private boolean[] live;
+	private int numLive;
+	// Rank of each ID's label alone (at 2 * ID) and with "|" on the end (at
+	// 2 * ID + 1), or null if the clusters weren't built from a counts
+	// table:
+	private int[] ranks;
+}
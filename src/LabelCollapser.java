@@ -1,17 +1,19 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LabelCollapser
 {
-	private static ExecutorService executor = null;
+	private static ForkJoinPool searchPool = null;
 	private static int numThreads = 1;
 
 	public static void main(String[] args)
@@ -21,19 +23,39 @@ public class LabelCollapser
 		boolean useTgt = true;
 
 		// Collapsing metric
-		boolean useL1 = true;
+		String metricName = "l1";
+		double smoothing = 1.0;
+
+		// Search engine
+		String engine = "brute";
 
 		// Stopping condition
-		boolean useIters = true;
-		int maxValue = 0;
+		StopCondition stop = StopCondition.Iters(0);
+
+		// Output
+		boolean useHistory = false;
 
 		// Input
 		boolean useSR = true;
 		boolean useOneline = false;
 		boolean useMoses = false;
+		boolean useSnapshot = false;
 		String inputFile = "";
 		String mosesFile1 = "";
 		String mosesFile2 = "";
+		String saveSnapshotFile = "";
+
+		// Checkpointing
+		String checkpointFile = "";
+		int checkpointIters = 0;
+		double checkpointMinutes = 0.0;
+		String resumeFile = "";
+
+		// Metrics
+		String metricsFile = null;
+
+		// Batched merging (off if negative)
+		double batchTolerance = -1.0;
 
 		int nextArg = 0;
 		while(nextArg < args.length)
@@ -55,28 +77,41 @@ public class LabelCollapser
 			}
 			else if(args[nextArg].toLowerCase().equals("--metric")) {
 				nextArg++;
-				String metric = args[nextArg].toLowerCase();
-				if(metric.equals("kl"))
-					useL1 = false;
-				else if(metric.equals("l1"))
-					useL1 = true;
-				else
+				metricName = args[nextArg].toLowerCase();
+				if(NewMetric(metricName, 0.0) == null)
 				{
 					PrintUsage();
 					return;
 				}
 
 			}
+			else if(args[nextArg].toLowerCase().equals("--smoothing")) {
+				smoothing = Double.parseDouble(args[++nextArg]);
+				if(smoothing < 0)
+				{
+					PrintUsage();
+					return;
+				}
+			}
+			else if(args[nextArg].toLowerCase().equals("--engine")) {
+				nextArg++;
+				engine = args[nextArg].toLowerCase();
+				if(!engine.equals("brute") && !engine.equals("pivot") &&
+				   !engine.equals("cached") && !engine.equals("nnqueue"))
+				{
+					PrintUsage();
+					return;
+				}
+			}
 			else if(args[nextArg].toLowerCase().equals("--stop")) {
 				nextArg++;
 				String type = args[nextArg].toLowerCase();
 				if(type.equals("iters"))
-					maxValue = Integer.parseInt(args[++nextArg]);
+					stop = StopCondition.Iters(Integer.parseInt(args[++nextArg]));
 				else if(type.equals("labels"))
-				{
-					maxValue = Integer.parseInt(args[++nextArg]);
-					useIters = false;
-				}
+					stop = StopCondition.JointLabels(Integer.parseInt(args[++nextArg]));
+				else if(type.equals("dist"))
+					stop = StopCondition.Dist(Double.parseDouble(args[++nextArg]));
 				else
 				{
 					PrintUsage();
@@ -87,7 +122,12 @@ public class LabelCollapser
 				nextArg++;
 				String type = args[nextArg].toLowerCase();
 				inputFile = args[++nextArg];
-				if(type.equals("oneline"))
+				if(type.equals("sr"))
+				{
+					useSR = true;
+					useOneline = false;
+				}
+				else if(type.equals("oneline"))
 				{
 					useSR = false;
 					useOneline = true;
@@ -105,12 +145,53 @@ public class LabelCollapser
 					mosesFile1 = args[++nextArg];
 					mosesFile2 = args[++nextArg];
 				}
+				else if(type.equals("snapshot"))
+				{
+					useSR = false;
+					useOneline = false;
+					useSnapshot = true;
+				}
+				else
+				{
+					PrintUsage();
+					return;
+				}
+			}
+			else if(args[nextArg].toLowerCase().equals("--output")) {
+				nextArg++;
+				String output = args[nextArg].toLowerCase();
+				if(output.equals("history"))
+					useHistory = true;
+				else if(output.equals("tables"))
+					useHistory = false;
 				else
 				{
 					PrintUsage();
 					return;
 				}
 			}
+			else if(args[nextArg].toLowerCase().equals("--save-snapshot")) {
+				saveSnapshotFile = args[++nextArg];
+			}
+			else if(args[nextArg].toLowerCase().equals("--checkpoint")) {
+				checkpointFile = args[++nextArg];
+				checkpointIters = Integer.parseInt(args[++nextArg]);
+				checkpointMinutes = Double.parseDouble(args[++nextArg]);
+			}
+			else if(args[nextArg].toLowerCase().equals("--resume")) {
+				resumeFile = args[++nextArg];
+			}
+			else if(args[nextArg].toLowerCase().equals("--metrics")) {
+				metricsFile = args[++nextArg];
+			}
+			else if(args[nextArg].toLowerCase().equals("--batch")) {
+				batchTolerance = Double.parseDouble(args[++nextArg]);
+				if(batchTolerance < 0)
+				{
+					PrintUsage();
+					return;
+				}
+			}
 			else if(args[nextArg].toLowerCase().equals("--cores")) {
 				numThreads = Integer.parseInt(args[++nextArg]);
 				if(numThreads <= 0)
@@ -126,33 +207,82 @@ public class LabelCollapser
 		System.err.println(useSrc);
 		System.err.println(useTgt);
 
-		System.err.println(useL1);
+		System.err.println(metricName);
+		System.err.println(smoothing);
+		System.err.println(engine);
 
-		System.err.println(useIters);
-		System.err.println(maxValue);
+		System.err.println(stop);
+		System.err.println(useHistory);
 	
 		System.err.println(useSR);
 		System.err.println(useOneline);
 		System.err.println(useMoses);
+		System.err.println(useSnapshot);
 		System.err.println(inputFile);
 		System.err.println(mosesFile1);
 		System.err.println(mosesFile2);
+		System.err.println(saveSnapshotFile);
+		System.err.println(checkpointFile);
+		System.err.println(resumeFile);
+		System.err.println(metricsFile);
+		System.err.println(batchTolerance);
+
+		// Batches come out of the distance caches, and so do the distances
+		// of metrics with a merge rule; the MI loss is meant to be kept in a
+		// table too:
+		CollapseMetric metric = NewMetric(metricName, smoothing);
+		if((batchTolerance >= 0 || metric instanceof MergeRuleMetric ||
+			metric instanceof MILoss) && !engine.equals("nnqueue"))
+			engine = "cached";
+		if(engine.equals("pivot") && !(metric instanceof L1Metric))
+		{
+			System.err.println("The pivot engine only works with the L1 metric!");
+			return;
+		}
+		double settingsAlpha = (metric instanceof Divergence ? smoothing : 0.0);
 
 		
 		// Read in and count up source--target node alignments:
 		BidirCondCounts<String, String> nodeAligns =
 			new BidirCondCounts<String, String>(useTgt, useSrc);
 			//new BidirCondCounts<String, String>(true, true);
-		try
+		Checkpoint checkpoint = null;
+		int settings = Checkpoint.Settings(useSrc, useTgt, metric);
+		if(!resumeFile.equals(""))
+		{
+			// Start from the checkpoint's counts instead of the input:
+			try
+			{
+				checkpoint = Checkpoint.Read(resumeFile);
+				if(checkpoint.GetSettings() != settings ||
+				   checkpoint.GetSmoothing() != settingsAlpha)
+				{
+					System.err.println("Checkpoint " + resumeFile +
+							" was made with a different --side, --metric or --smoothing!");
+					return;
+				}
+				checkpoint.LoadCounts(nodeAligns);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Error reading checkpoint file " +
+								   resumeFile + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		else try
 		{
 			if(useSR)
-				InputReader.FillFromScorableRuleFile(nodeAligns, inputFile, true, false, true);
+				InputReader.FillFromScorableRuleFileParallel(nodeAligns, inputFile, true, false, true,
+															 GetSearchPool(), 4 * numThreads);
 			else if(useOneline)
 				InputReader.FillFromOnelineFile(nodeAligns, inputFile);
 			else if(useMoses)
 				InputReader.FillFromMosesFiles(nodeAligns, inputFile, mosesFile1, mosesFile2);
+			else if(useSnapshot)
+				CountsSnapshot.Load(nodeAligns, inputFile);
 			else
-				InputReader.FillFromCountsFile(nodeAligns, inputFile);
+				InputReader.FillFromCountsFileMapped(nodeAligns, inputFile);
 		}
 		catch(FileNotFoundException e)
 		{
@@ -163,47 +293,151 @@ public class LabelCollapser
 			}
 			else
 				System.err.println("Input file " + inputFile + " wasn't found!");
+			System.exit(1);
+		}
+		catch(IOException e)
+		{
+			// Only a snapshot is all or nothing; the other readers report bad
+			// lines and carry on:
+			System.err.println("Error reading snapshot file " + inputFile +
+							   ": " + e.getMessage());
+			System.exit(1);
+		}
+
+		// Merge rules only work out of a distance table:
+		boolean useQueue = engine.equals("nnqueue");
+		if(metric instanceof MergeRuleMetric &&
+		   ((useSrc && !DistanceCache.Fits(nodeAligns, true, metric, useQueue)) ||
+			(useTgt && !DistanceCache.Fits(nodeAligns, false, metric, useQueue))))
+		{
+			System.err.println("Too many labels to keep a distance table for --metric " +
+							   metricName + "!");
 			return;
 		}
-		
-		// Actually do the label collapsing:
-		//nodeAligns.PrintNormDistributionMatrix();
-		if(useL1)
+
+		// Save the counts for later runs before anything is merged:
+		if(!saveSnapshotFile.equals(""))
 		{
-			if(useIters)
-				RunGreedyL1Collapse(nodeAligns, maxValue, useSrc, useTgt);
-			else
-				System.err.println("NOT IMPLEMENTED YET!");
-				// based on max num joint labels -- not written!
+			try
+			{
+				CountsSnapshot.Save(nodeAligns, saveSnapshotFile);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Error writing snapshot file " +
+								   saveSnapshotFile + ": " + e.getMessage());
+				return;
+			}
 		}
-		else
+
+		// Set up checkpointing, which also needs the unmerged counts:
+		if(!checkpointFile.equals(""))
 		{
-			if(useIters)
-				RunGreedyKLCollapse(nodeAligns, maxValue, useSrc, useTgt);
-			else
-				System.err.println("NOT IMPLEMENTED YET!");
-				// based on max num joint labels -- not written!
+			if(checkpoint == null)
+			{
+				try
+				{
+					checkpoint = new Checkpoint(nodeAligns, settings, settingsAlpha);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Error starting checkpoint: " + e.getMessage());
+					return;
+				}
+			}
+			checkpoint.WriteTo(checkpointFile, checkpointIters, checkpointMinutes);
+		}
+
+		// Let the run be watched and steered over JMX:
+		CollapseMonitor monitor = new CollapseMonitor(nodeAligns, stop, checkpoint);
+		monitor.Register();
+
+		RunMetrics metrics = null;
+		try
+		{
+			metrics = new RunMetrics(metricsFile, monitor);
+		}
+		catch(FileNotFoundException e)
+		{
+			System.err.println("Metrics file " + metricsFile + " can't be written!");
+			return;
 		}
+		
+		// The output can run to many lines, so buffer it rather than
+		// flushing on every println:
+		System.setOut(new PrintStream(new BufferedOutputStream(
+			new FileOutputStream(FileDescriptor.out), 1 << 16), false));
+		MergeHistory history = null;
+		if(useHistory)
+		{
+			history = new MergeHistory(System.out);
+			history.WriteLabels(nodeAligns);
+		}
+
+		// Actually do the label collapsing:
+		//nodeAligns.PrintNormDistributionMatrix();
+		RunCollapse(nodeAligns, stop, useSrc, useTgt, metric, engine,
+					batchTolerance, history, checkpoint, metrics);
 		//nodeAligns.PrintNormDistributionMatrix();
+		System.out.flush();
+		metrics.Close();
+		if(checkpoint != null)
+			checkpoint.WritePending();
 	}
 	
 	
 	public static void PrintUsage()
 	{
 		System.err.println("Usage:  java LabelCollapser " +
-				"--type <type> --metric <metric> --stop <stop> --input <input> [--cores <cores>]\n");
+				"--type <type> --metric <metric> [--smoothing <alpha>] --stop <stop> --input <input> [--engine <engine>] [--output <output>] [--save-snapshot <file>]\n" +
+				"\t[--checkpoint <file> <iters> <minutes>] [--resume <file>] [--metrics <file>] [--batch <tol>] [--cores <cores>]\n");
 		System.err.println("<type>   : 'src' for source-side collapsing only");
 		System.err.println("           'tgt' for target-side collapsing only");
 		System.err.println("           'both' for mixed source- and target-side collapsing");
 		System.err.println("<metric> : 'l1' for L1 distance");
-		System.err.println("           'kl' for KL divergence");
+		System.err.println("           'kl' for symmetrized KL divergence");
+		System.err.println("           'js' for Jensen-Shannon divergence");
+		System.err.println("           'average' for average L1 distance between the labels merged so far");
+		System.err.println("           'weighted' for the same average weighted by label counts");
+		System.err.println("           'ward' for Ward's minimum-variance criterion");
+		System.err.println("           'mi' for the source-target mutual information a merge would lose,");
+		System.err.println("           in bits, as in Brown clustering");
+		System.err.println("           ('average', 'weighted' and 'ward' update distances after a merge");
+		System.err.println("           without recounting; they and 'mi' use the cached engine unless");
+		System.err.println("           nnqueue is given)");
+		System.err.println("<alpha>  : add-alpha smoothing for 'kl' and 'js' (default 1); with 0,");
+		System.err.println("           'kl' only looks at the labels' shared support");
 		System.err.println("<stop>   : 'iters <num-iters>' for fixed number of iterations");
 		System.err.println("           'labels <max-joint-labels>' for max final number of joint labels");
+		System.err.println("           'dist <max-dist>' to stop before any merge farther apart than max-dist");
 		System.err.println("<input>  : 'sr <sr-file>' for ScorableRule format");
 		System.err.println("           'oneline <oneline-file>' for Vamshi oneline format");
 		System.err.println("           'counts <counts-file>' for file of label co-occurence counts");
 		System.err.println("           'moses <src-trees> <tgt-trees> <moses-aligns>' for parses and Moses aligns");
+		System.err.println("           'snapshot <snapshot-file>' for counts saved with --save-snapshot");
+		System.err.println("           Input files may be gzipped; '-' reads from standard input");
+		System.err.println("<engine> : 'brute' to search all label pairs every iteration (default)");
+		System.err.println("           'cached' to keep distances between iterations");
+		System.err.println("           'nnqueue' to also keep a queue of nearest neighbors");
+		System.err.println("           'pivot' to search like brute, skipping pairs that distances to a few");
+		System.err.println("           pivot labels show can't be closest (L1 only)");
+		System.err.println("<output> : 'tables' to print the collapse tables after every iteration (default)");
+		System.err.println("           'history' to print one line per merge; see ExtractLabelMaps");
+		System.err.println("<file>   : where to save the input counts for reloading with '--input snapshot'");
+		System.err.println("--checkpoint : save the run's progress to <file> every <iters> iterations");
+		System.err.println("               or <minutes> minutes (0 to not use either one)");
+		System.err.println("--resume     : carry on from a checkpoint <file>, with the same --side, --metric");
+		System.err.println("               and --smoothing; the input is taken from the checkpoint, and the output is the");
+		System.err.println("               same as an uninterrupted run's");
+		System.err.println("--metrics    : write search and merge times, distance evaluations and heap");
+		System.err.println("               use for each iteration to <file>, as CSV; Flight Recorder");
+		System.err.println("               gets the same as labelcollapse.CollapseIteration events");
+		System.err.println("--batch      : after each search, merge every pair of mutual nearest neighbors");
+		System.err.println("               at most <tol> farther apart than the closest pair (uses the");
+		System.err.println("               cached engine unless nnqueue is given)");
 		System.err.println("<cores>  : 'n' to use n cores");
+		System.err.println("A running collapse can be watched, checkpointed and stopped over JMX, as the");
+		System.err.println("MBean " + CollapseMonitor.OBJECT_NAME);
 	}
 
 
@@ -212,7 +446,7 @@ public class LabelCollapser
 	RunFullGreedyL1Collapse(BidirCondCounts<String, String> nodeAligns)
 	{
 		int n = nodeAligns.NumSrcItems() + nodeAligns.NumTgtItems() - 2;
-		RunGreedyL1Collapse(nodeAligns, n);
+		RunGreedyL1Collapse(nodeAligns, StopCondition.Iters(n));
 	}
 
 
@@ -220,345 +454,507 @@ public class LabelCollapser
 	RunFullGreedyKLCollapse(BidirCondCounts<String, String> nodeAligns)
 	{
 		int n = nodeAligns.NumSrcItems() + nodeAligns.NumTgtItems() - 2;
-		RunGreedyKLCollapse(nodeAligns, n);
+		RunGreedyKLCollapse(nodeAligns, StopCondition.Iters(n));
 	}
 	*/
 
 	
+	// RunCollapse function:
+	//    Greedy collapsing: each iteration merges the closest pair of
+	//    labels by the given metric, on whichever of the sides being
+	//    collapsed it's on, until the stopping condition is met.  Each side
+	//    is searched by a PairSearch built for the engine (see
+	//    NewPairSearch); every engine picks the same pairs for the same
+	//    metric, so the merge sequence and output don't depend on it.
+	//
+	//    If batchTolerance isn't negative, each search is followed by a batch
+	//    of merges instead of one: every pair of labels on the closest
+	//    pair's side that are each other's nearest neighbors and at most
+	//    batchTolerance farther apart than the closest pair, closest first.
+	//    The pairs are disjoint, so each one's distance is still the same
+	//    when its turn comes, but a label merged earlier in the batch may
+	//    have become a closer choice for one of them; the run is then no
+	//    longer strictly greedy.  Each merge still counts as an iteration.
+	//    How far the batched merges were from the closest pair is reported
+	//    on stderr.  A run resumed in the middle of a batch starts with a
+	//    new search, so from there on it can differ from an uninterrupted
+	//    one.
 	public static void
-	RunGreedyL1Collapse(BidirCondCounts<String, String> nodeAligns, int numIters,
-						boolean collapseSrc, boolean collapseTgt)
+	RunCollapse(BidirCondCounts<String, String> nodeAligns, StopCondition stop,
+				boolean collapseSrc, boolean collapseTgt,
+				CollapseMetric metric, String engine, double batchTolerance,
+				MergeHistory history, Checkpoint checkpoint, RunMetrics metrics)
 	{
-		// Initialize data structures to hold collapsed-label mappings:
-		Map<String, List<String>> srcCollapseMap =
-			new HashMap<String, List<String>>();
-		for(String srcLabel : nodeAligns.GetSrcItems())
-		{
-			List<String> l = new ArrayList<String>();
-			l.add(srcLabel);
-			srcCollapseMap.put(srcLabel, l);
-		}
-		Map<String, List<String>> tgtCollapseMap =
-			new HashMap<String, List<String>>();
-		for(String tgtLabel : nodeAligns.GetTgtItems())
-		{
-			List<String> l = new ArrayList<String>();
-			l.add(tgtLabel);
-			tgtCollapseMap.put(tgtLabel, l);
-		}
-		
+		// Every label starts out in a cluster of its own:
+		LabelClusters srcClusters = new LabelClusters(nodeAligns, true);
+		LabelClusters tgtClusters = new LabelClusters(nodeAligns, false);
+
 		// Print distribution matrices before collapsing:
 		//System.out.println("===== INITIAL ALIGNMENT DISTRIBUTIONS =====\n");
 		//nodeAligns.PrintNormDistributionMatrix();
 		//System.out.println("");
-		
-		// Run the specified number of collapsing iterations:
-		for(int i = 1; i <= numIters; i++)
+
+		// Set up the searches for the sides being collapsed:
+		PairSearch srcSearch = null;
+		PairSearch tgtSearch = null;
+		if(collapseSrc)
+			srcSearch = NewPairSearch(nodeAligns, true, metric, srcClusters, engine);
+		if(collapseTgt)
+			tgtSearch = NewPairSearch(nodeAligns, false, metric, tgtClusters, engine);
+
+		// Pick up where a checkpointed run left off:
+		int firstIter = ResumeMerges(nodeAligns, checkpoint, srcClusters,
+									 tgtClusters, history, srcSearch,
+									 tgtSearch) + 1;
+
+		// How batched merges departed from one-at-a-time greedy:
+		int numSearches = 0;
+		int numBatched = 0;
+		double totalExcess = 0.0;
+		double maxExcess = 0.0;
+
+		// Run collapsing iterations until the stopping condition is met:
+		int i = firstIter;
+		while(!stop.IsDone(i - 1, nodeAligns))
 		{
 			System.err.println("There are now " + nodeAligns.NumPairs() +
 							   " joint labels: " + nodeAligns.NumSrcItems() +
 							   " source and " + nodeAligns.NumTgtItems() +
 							   " target.");
-			//nodeAligns.PrintL1NearestNeighbors(true);  // new test line
-			//System.err.println("Src nearest neighbor std dev: " +
-			//				   L1NearestNeighborStdDev(nodeAligns, true));
-			//System.err.println("Tgt nearest neighbor std dev: " +
-			//				   L1NearestNeighborStdDev(nodeAligns, false));
-	
+
 			// Find the closest label pair on both source and target side:
+			metrics.StartSearch();
+			long evalsBefore = NumEvals(srcSearch) + NumEvals(tgtSearch);
 			double sValue = Double.MAX_VALUE;
-			String[] minS = new String[2];
+			LabelPair minS = null;
 			double tValue = Double.MAX_VALUE;
-			String[] minT = new String[2];
-			if(collapseSrc)
+			LabelPair minT = null;
+			if(srcSearch != null)
+				minS = srcSearch.FindMinPair();
+			if(minS != null)
+				sValue = minS.dist;
+			if(tgtSearch != null)
+				minT = tgtSearch.FindMinPair();
+			if(minT != null)
+				tValue = minT.dist;
+
+			if(minS == null && minT == null)
+				break;
+			if(stop.IsTooFar(Math.min(sValue, tValue)))
+				break;
+
+			// Pick the pair that's closer, and in batch mode everything
+			// else on its side that can go with it:
+			boolean srcSide = (minT == null || (minS != null && sValue < tValue));
+			PairSearch search = (srcSide ? srcSearch : tgtSearch);
+			double minDist = Math.min(sValue, tValue);
+			List<LabelPair> batch;
+			if(batchTolerance >= 0)
+				batch = search.FindMutualPairs(minDist + batchTolerance);
+			else
 			{
-				if(nodeAligns.GetSrcItems().size() >= 2)
-				{
-					minS = GetMinL1Dist(nodeAligns, true);
-					sValue = nodeAligns.CalcTGSL1Dist(minS[0], minS[1]);
-				}
+				batch = new ArrayList<LabelPair>();
+				batch.add(srcSide ? minS : minT);
 			}
-			if(collapseTgt)
+			metrics.EndSearch();
+			numSearches++;
+
+			for(int b = 0; b < batch.size(); b++)
 			{
-				if(nodeAligns.GetTgtItems().size() >= 2)
+				LabelPair pair = batch.get(b);
+				if(b > 0)
 				{
-					minT = GetMinL1Dist(nodeAligns, false);
-					tValue = nodeAligns.CalcSGTL1Dist(minT[0], minT[1]);
+					// Later merges in a batch are iterations without a
+					// search of their own:
+					if(stop.IsDone(i - 1, nodeAligns) || stop.IsTooFar(pair.dist))
+						break;
+					System.err.println("There are now " + nodeAligns.NumPairs() +
+									   " joint labels: " + nodeAligns.NumSrcItems() +
+									   " source and " + nodeAligns.NumTgtItems() +
+									   " target.");
+					metrics.StartSearch();
+					metrics.EndSearch();
+					evalsBefore = NumEvals(srcSearch) + NumEvals(tgtSearch);
+					numBatched++;
+					totalExcess += pair.dist - minDist;
+					maxExcess = Math.max(maxExcess, pair.dist - minDist);
 				}
-			}
 
-			if(sValue == Double.MAX_VALUE && tValue == Double.MAX_VALUE)
-				break;
-			
-			// Merge the pair that's closer:
-			if(sValue < tValue)
-			{
-				// Update source-side map and merge labels:
-				List<String> l = new ArrayList<String>();
-				l.addAll(srcCollapseMap.remove(minS[0]));
-				l.addAll(srcCollapseMap.remove(minS[1]));
-				String newLabel = minS[0] + "|" + minS[1];
-				srcCollapseMap.put(newLabel, l);
-				nodeAligns.MergeSrcItems(minS[0], minS[1], newLabel);
-			}
-			else
-			{
-				// Update target-side map and merge labels:
-				List<String> l = new ArrayList<String>();
-				l.addAll(tgtCollapseMap.remove(minT[0]));
-				l.addAll(tgtCollapseMap.remove(minT[1]));
-				String newLabel = minT[0] + "|" + minT[1];
-				tgtCollapseMap.put(newLabel, l);
-				nodeAligns.MergeTgtItems(minT[0], minT[1], newLabel);
-			}
+				MergePair(nodeAligns, srcSide, pair.id1, pair.id2, pair.dist, i,
+						  srcClusters, tgtClusters, history, checkpoint,
+						  srcSearch, tgtSearch);
+				metrics.EndIteration(i, srcSide, pair.dist,
+									 NumEvals(srcSearch) + NumEvals(tgtSearch) - evalsBefore,
+									 nodeAligns);
 
-			System.out.println("=== ITERATION " + i + " TABLES ===");
-			System.out.println("=== SOURCE-SIDE COLLAPSING ===");
-			PrintCollapseTable(srcCollapseMap);
-			System.out.println("\n=== TARGET-SIDE COLLAPSING ===");
-			PrintCollapseTable(tgtCollapseMap);
-			
+				if(history == null)
+				{
+					System.out.println("=== ITERATION " + i + " TABLES ===");
+					PrintCollapseTables(srcClusters, tgtClusters);
+				}
+				i++;
+			}
 		}
 		System.err.println("There are now " + nodeAligns.NumPairs() +
 						   " joint labels: " + nodeAligns.NumSrcItems() +
 						   " source and " + nodeAligns.NumTgtItems() +
 				   		   " target.");
-		
+		if(batchTolerance >= 0)
+		{
+			System.err.println("Batched " + numBatched + " of " + (i - firstIter) +
+							   " merges in " + numSearches + " searches; batched merges" +
+							   " were farther apart than their search's closest pair by " +
+							   (numBatched > 0 ? totalExcess / numBatched : 0.0) +
+							   " on average and " + maxExcess + " at most.");
+		}
+
 		// Print distribution matrices again after collapsing:
 		//System.out.println("\n===== FINAL ALIGNMENT DISTRIBUTIONS =====\n");
 		//nodeAligns.PrintNormDistributionMatrix();
 		//System.out.println("");
-		
+
 		// Print out final merge tables:
-		System.out.println("=== FINAL TABLES ===");
-		System.out.println("=== SOURCE-SIDE COLLAPSING ===");
-		PrintCollapseTable(srcCollapseMap);
-		System.out.println("\n=== TARGET-SIDE COLLAPSING ===");
-		PrintCollapseTable(tgtCollapseMap);
+		if(history == null)
+		{
+			System.out.println("=== FINAL TABLES ===");
+			PrintCollapseTables(srcClusters, tgtClusters);
+		}
 	}
 
-	
+	// MergeLabels function:
+	//    Carries out one merge chosen (or replayed) by a collapse run: it's
+	//    recorded in the history and checkpoint, if there are any, and the
+	//    second label is merged into the first in the clusters and the
+	//    counts.  Only when the run prints tables is the merge also printed
+	//    in Graphviz format on stderr, since that needs the clusters' names;
+	//    a history has the same merges by ID.
 	public static void
-	RunGreedyKLCollapse(BidirCondCounts<String, String> nodeAligns, int numIters,
-						boolean collapseSrc, boolean collapseTgt)
+	MergeLabels(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+				int id1, int id2, double dist, int iteration,
+				LabelClusters srcClusters, LabelClusters tgtClusters,
+				MergeHistory history, Checkpoint checkpoint)
 	{
-		// Initialize data structures to hold collapsed-label mappings:
-		Map<String, List<String>> srcCollapseMap =
-			new HashMap<String, List<String>>();
-		for(String srcLabel : nodeAligns.GetSrcItems())
-		{
-			List<String> l = new ArrayList<String>();
-			l.add(srcLabel);
-			srcCollapseMap.put(srcLabel, l);
-		}
-		Map<String, List<String>> tgtCollapseMap =
-			new HashMap<String, List<String>>();
-		for(String tgtLabel : nodeAligns.GetTgtItems())
+		if(history != null)
+			history.WriteMerge(iteration, srcSide, id1, id2, dist);
+		if(checkpoint != null)
+			checkpoint.AddMerge(srcSide, id1, id2, dist);
+
+		LabelClusters clusters = (srcSide ? srcClusters : tgtClusters);
+		if(history == null)
+			PrintMergeEdges(nodeAligns, srcSide, clusters, id1, id2);
+		clusters.Merge(id1, id2);
+		if(srcSide)
+			nodeAligns.MergeSrcIDs(id1, id2);
+		else
+			nodeAligns.MergeTgtIDs(id1, id2);
+	}
+
+
+	// PrintMergeEdges function:
+	//    Prints the edges from a merged cluster to the two it's about to be
+	//    made from in Graphviz format on stderr, labelled with their L1
+	//    distance.
+	public static void PrintMergeEdges(BidirCondCounts<String, String> nodeAligns,
+									   boolean srcSide, LabelClusters clusters,
+									   int id1, int id2)
+	{
+		String side = (srcSide ? "Src" : "Tgt");
+		double dist = (srcSide ? nodeAligns.CalcTGSL1Dist(id1, id2) :
+					   nodeAligns.CalcSGTL1Dist(id1, id2));
+		String name1 = clusters.Name(id1);
+		String name2 = clusters.Name(id2);
+		String merged = name1 + "|" + name2;
+		System.err.format("\t\"%s:%s\" -> \"%s:%s\" [label = \"%.4f\"];\n",
+						  side, merged, side, name1, dist);
+		System.err.format("\t\"%s:%s\" -> \"%s:%s\" [label = \"%.4f\"];\n",
+						  side, merged, side, name2, dist);
+	}
+
+
+	// MergePair function:
+	//    Carries out a merge with MergeLabels, then brings the searches for
+	//    both sides up to date.  Only targets seen with one of the merged
+	//    sources (or vice versa) have had their distributions changed; their
+	//    counts with the two merged labels are taken beforehand, as the
+	//    merge adds them together.
+	public static void
+	MergePair(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+			  int id1, int id2, double dist, int iteration,
+			  LabelClusters srcClusters, LabelClusters tgtClusters,
+			  MergeHistory history, Checkpoint checkpoint,
+			  PairSearch srcSearch, PairSearch tgtSearch)
+	{
+		if(srcSide)
 		{
-			List<String> l = new ArrayList<String>();
-			l.add(tgtLabel);
-			tgtCollapseMap.put(tgtLabel, l);
+			int[] changed = MergedSupport(nodeAligns.GetTGSRow(id1),
+										  nodeAligns.GetTGSRow(id2));
+			int[] counts1 = SupportCounts(nodeAligns.GetTGSRow(id1), changed);
+			int[] counts2 = SupportCounts(nodeAligns.GetTGSRow(id2), changed);
+			MergeLabels(nodeAligns, true, id1, id2, dist, iteration,
+						srcClusters, tgtClusters, history, checkpoint);
+			srcSearch.MergeLabels(id1, id2);
+			if(tgtSearch != null)
+				tgtSearch.UpdatePairsAmong(changed, counts1, counts2);
 		}
-
-		// Avoid probabilities of 0 when computing KL: add a pseudo-count
-		// of 1 to every (src, tgt) pair:
-		for(String src : nodeAligns.GetSrcItems())
-			for(String tgt : nodeAligns.GetTgtItems())
-				nodeAligns.AddCount(src, tgt, 1);
-		
-		// Run the specified number of collapsing iterations:
-		for(int i = 1; i <= numIters; i++)
+		else
 		{
-			// Find the closest label pair on both source and target side:
-			double sValue = Double.MAX_VALUE;
-			String[] minS = new String[2];
-			double tValue = Double.MAX_VALUE;
-			String[] minT = new String[2];
-			if(collapseSrc)
-			{
-				minS = GetMinKLDist(nodeAligns, true);
-				sValue = nodeAligns.CalcTGSL1Dist(minS[0], minS[1]);
-			}
-			if(collapseTgt)
-			{
-				minT = GetMinKLDist(nodeAligns, false);
-				tValue = nodeAligns.CalcSGTL1Dist(minT[0], minT[1]);
-			}
-
-			// Merge the pair that's closer:
-			if(sValue < tValue)
-			{
-				// Update source-side map and merge labels:
-				List<String> l = new ArrayList<String>();
-				l.addAll(srcCollapseMap.remove(minS[0]));
-				l.addAll(srcCollapseMap.remove(minS[1]));
-				String newLabel = minS[0] + "|" + minS[1];
-				srcCollapseMap.put(newLabel, l);
-				nodeAligns.MergeSrcItems(minS[0], minS[1], newLabel);
-			}
-			else
-			{
-				// Update target-side map and merge labels:
-				List<String> l = new ArrayList<String>();
-				l.addAll(tgtCollapseMap.remove(minT[0]));
-				l.addAll(tgtCollapseMap.remove(minT[1]));
-				String newLabel = minT[0] + "|" + minT[1];
-				tgtCollapseMap.put(newLabel, l);
-				nodeAligns.MergeTgtItems(minT[0], minT[1], newLabel);
-			}
+			int[] changed = MergedSupport(nodeAligns.GetSGTRow(id1),
+										  nodeAligns.GetSGTRow(id2));
+			int[] counts1 = SupportCounts(nodeAligns.GetSGTRow(id1), changed);
+			int[] counts2 = SupportCounts(nodeAligns.GetSGTRow(id2), changed);
+			MergeLabels(nodeAligns, false, id1, id2, dist, iteration,
+						srcClusters, tgtClusters, history, checkpoint);
+			tgtSearch.MergeLabels(id1, id2);
+			if(srcSearch != null)
+				srcSearch.UpdatePairsAmong(changed, counts1, counts2);
 		}
-		
-		// Print out final merge tables:
-		System.out.println("=== SOURCE-SIDE COLLAPSING ===");
-		PrintCollapseTable(srcCollapseMap);
-		System.out.println("\n=== TARGET-SIDE COLLAPSING ===");
-		PrintCollapseTable(tgtCollapseMap);
 	}
 
-	public static String getClosestLabelByL1(String label1, BidirCondCounts<String, String> nodeAligns, Set<String> labels, boolean srcSide)
+
+	// ResumeMerges function:
+	//    Replays the merges saved in a checkpoint, if there is one, with
+	//    the same output as the run that made them.  The merges go through
+	//    the searches too, so that they're in the same state as the
+	//    original run's were; that matters for distances kept up to date
+	//    by a merge rule, which can't be got back from the counts.  Returns
+	//    the number of iterations replayed.
+	public static int
+	ResumeMerges(BidirCondCounts<String, String> nodeAligns, Checkpoint checkpoint,
+				 LabelClusters srcClusters, LabelClusters tgtClusters,
+				 MergeHistory history, PairSearch srcSearch,
+				 PairSearch tgtSearch)
 	{
-		String minLabel = "";
-		double minDiff = 2.1;
-		for(String label2 : labels)
+		if(checkpoint == null)
+			return 0;
+		int numMerges = checkpoint.NumMerges();
+		for(int i = 1; i <= numMerges; i++)
 		{
-			if(label1.equals(label2))
-				continue;
+			System.err.println("There are now " + nodeAligns.NumPairs() +
+							   " joint labels: " + nodeAligns.NumSrcItems() +
+							   " source and " + nodeAligns.NumTgtItems() +
+							   " target.");
 
-			double diff;
-			if(srcSide)
-				diff = nodeAligns.CalcTGSL1Dist(label1, label2);
-			else
-				diff = nodeAligns.CalcSGTL1Dist(label1, label2);
+			// The checkpoint already has these merges:
+			MergePair(nodeAligns, checkpoint.IsSrcMerge(i - 1),
+					  checkpoint.MergeID1(i - 1), checkpoint.MergeID2(i - 1),
+					  checkpoint.MergeDist(i - 1), i, srcClusters,
+					  tgtClusters, history, null, srcSearch, tgtSearch);
 
-			if(diff < minDiff)
+			if(history == null)
 			{
-				minLabel = label2;	
-				minDiff = diff;
+				System.out.println("=== ITERATION " + i + " TABLES ===");
+				PrintCollapseTables(srcClusters, tgtClusters);
 			}
 		}
-		return minLabel;
+		if(numMerges > 0)
+			System.err.println("Resumed after " + numMerges + " iterations.");
+		return numMerges;
 	}
 
-	
-	public static String[]
-	GetMinL1Dist(BidirCondCounts<String, String> nodeAligns, boolean srcSide)
+
+	// NumEvals function:
+	//    Distances computed so far by a side's search, or 0 if that side
+	//    isn't being collapsed.
+	public static long NumEvals(PairSearch search)
 	{
-		// Get list of all source (or target) labels:
-		Set<String> labels = null;
-		if(srcSide)
-			labels = nodeAligns.GetSrcItems();
-		else
-			labels = nodeAligns.GetTgtItems();
-	
-		// Loop over all pairs of labels to find the two whose L1 distance
-		// is the smallest:
-		String[] minLabels = {"", ""};
-		double minDiff = 2.1;  // Actual max value is 2.0
+		if(search == null)
+			return 0;
+		return search.NumEvals();
+	}
 
-		/*
-		ExecutorService es = Executors.newFixedThreadPool(2);
-		List<Callable<Object>> todo = new ArrayList<Callable<Object>>(singleTable.size());
 
-		for (DataTable singleTable : uniquePhrases)
-		{ todo.add(Executors.callable(new ComputeDTask(singleTable))); }
+	// NewMetric function:
+	//    The metric with the given --metric name, or null if there's no
+	//    such metric.  The smoothing is only used by the divergences.
+	public static CollapseMetric NewMetric(String name, double smoothing)
+	{
+		if(name.equals("l1"))
+			return new L1Metric();
+		else if(name.equals("kl"))
+			return new Divergence(false, smoothing);
+		else if(name.equals("js"))
+			return new Divergence(true, smoothing);
+		else if(name.equals("average"))
+			return Linkage.Average();
+		else if(name.equals("weighted"))
+			return Linkage.Weighted();
+		else if(name.equals("ward"))
+			return Linkage.Ward();
+		else if(name.equals("mi"))
+			return new MILoss();
+		return null;
+	}
 
-		Future<Object> answers = es.invokeAll(todo);
-		*/
 
-		HashMap<String, Future<String>> tasks = new HashMap<String, Future<String>>();
-		executor = Executors.newFixedThreadPool(numThreads);
-		for(String label : labels)
+	// NewPairSearch function:
+	//    The search for one side's closest pairs that the given --engine
+	//    name asks for, breaking ties with the side's clusters.
+	public static PairSearch
+	NewPairSearch(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+				  CollapseMetric metric, LabelClusters clusters, String engine)
+	{
+		// Without a merge rule, every engine picks the same pairs, so the
+		// brute-force one can stand in for a table that's too big:
+		if((engine.equals("nnqueue") || engine.equals("cached")) &&
+		   !(metric instanceof MergeRuleMetric) &&
+		   !DistanceCache.Fits(nodeAligns, srcSide, metric,
+							   engine.equals("nnqueue")))
 		{
-			ParallelTask task = new ParallelTask(label, nodeAligns, srcSide);
-			Future<String> future = executor.submit(task);
-			tasks.put(label, future);
+			System.err.println("Too many " + (srcSide ? "source" : "target") +
+							   " labels for the " + engine +
+							   " engine's distance table; using the brute engine.");
+			engine = "brute";
 		}
 
-		for(String label1 : labels)
-		{
-			try
-			{	
-				Future<String> future = tasks.get(label1);
-				String label2 = future.get();
+		if(engine.equals("nnqueue"))
+			return new NeighborQueueCache(nodeAligns, srcSide, metric, clusters);
+		else if(engine.equals("cached"))
+			return new DistanceCache(nodeAligns, srcSide, metric, clusters);
 
-				double diff;
-				if(srcSide)
-					diff = nodeAligns.CalcTGSL1Dist(label1, label2);
-				else
-					diff = nodeAligns.CalcSGTL1Dist(label1, label2);
+		PivotIndex pivots = null;
+		if(engine.equals("pivot"))
+			pivots = new PivotIndex(nodeAligns, srcSide, NUM_PIVOTS);
+		return new BruteForceSearch(nodeAligns, srcSide, metric, clusters, pivots,
+									NewDenseDists(nodeAligns, srcSide, metric));
+	}
 
-				if(diff < minDiff)
-				{
-					minLabels[0] = label1;
-					minLabels[1] = label2;
-					minDiff = diff;	
-				}
-			}
-			catch(InterruptedException e)
+
+	// NewDenseDists function:
+	//    Dense rows for one side's labels if the metric has dense kernels
+	//    (L1 and KL) and the labels are dense enough to be worth it (see
+	//    DenseDists.IsWorthwhile), or null.
+	public static DenseDists
+	NewDenseDists(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+				  CollapseMetric metric)
+	{
+		Divergence divergence = null;
+		if(metric instanceof Divergence)
+			divergence = (Divergence)metric;
+		else if(!(metric instanceof L1Metric))
+			return null;
+		if(!DenseDists.IsWorthwhile(nodeAligns, srcSide, divergence))
+			return null;
+		System.err.println("Using dense " + (srcSide ? "source" : "target") +
+						   " distributions" + (DenseDists.HasVectorAPI() ?
+											   " with the Vector API" : "") + ".");
+		return new DenseDists(nodeAligns, srcSide, divergence);
+	}
+
+
+	// IsBetterPair function:
+	//    Defines the tie-break used by every collapse engine: the smaller
+	//    distance wins, and equal distances go to the pair with the smaller
+	//    LabelClusters.PairKey, i.e. the smaller (ordered) pair of ranks.
+	public static boolean IsBetterPair(double diff, long key,
+									   double minDiff, long minKey)
+	{
+		if(diff != minDiff)
+			return (diff < minDiff);
+		return (key < minKey);
+	}
+
+	
+	// GetMinDist function:
+	//    Searches the upper triangle of the pair space for the closest pair
+	//    of source (or target) labels by the given metric, in parallel on
+	//    the shared fork/join pool.  With a PivotIndex for the side (only
+	//    for L1Metric), pairs it shows can't be closest are skipped, and
+	//    with DenseDists most pairs are ruled out with the dense kernels;
+	//    the result is the same either way.  Ties are broken with the
+	//    side's clusters.
+	public static LabelPair
+	GetMinDist(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+			   CollapseMetric metric, LabelClusters clusters,
+			   PivotIndex pivots, DenseDists dense)
+	{
+		// Get IDs of all source (or target) labels:
+		int numIDs;
+		if(srcSide)
+			numIDs = nodeAligns.NumSrcIDs();
+		else
+			numIDs = nodeAligns.NumTgtIDs();
+		int[] ids = new int[numIDs];
+		int numLabels = 0;
+		for(int id = 0; id < numIDs; id++)
+		{
+			// Build the normalized distributions up front, rather than
+			// having the search threads race to do it:
+			if(srcSide && nodeAligns.IsSrcItem(id))
 			{
-				throw new RuntimeException(e);
+				nodeAligns.GetTGSDist(id);
+				ids[numLabels++] = id;
 			}
-			catch(ExecutionException e)
+			else if(!srcSide && nodeAligns.IsTgtItem(id))
 			{
-				throw new RuntimeException(e);
+				nodeAligns.GetSGTDist(id);
+				ids[numLabels++] = id;
 			}
 		}
-		executor.shutdown();
-		//System.err.println("Closest labels are " + minLabels[0] + " and " +
-		//		minLabels[1] + " with difference " + minDiff);
-		return minLabels;
+		ids = Arrays.copyOf(ids, numLabels);
+		if(numLabels < 2)
+			return null;
+
+		// Aim for a few chunks of pairs per thread, so that threads that
+		// finish early can steal work from the others:
+		long numPairs = (long)numLabels * (numLabels - 1) / 2;
+		long grain = Math.max(256, numPairs / (8 * numThreads));
+		AtomicLong bound = null;
+		if(pivots != null)
+			bound = new AtomicLong(Double.doubleToLongBits(pivots.SeedBound(ids)));
+		ParallelTask task = new ParallelTask(nodeAligns, ids, 0, numLabels,
+											 grain, srcSide, metric, clusters, pivots,
+											 bound, dense);
+		return GetSearchPool().invoke(task);
 	}
 
-	public static String[]
-	GetMinKLDist(BidirCondCounts<String, String> nodeAligns, boolean srcSide)
+
+	// GetSearchPool function:
+	//    The fork/join pool used by the parallel searches and the parallel
+	//    input reader.  It's created the first time it's needed and reused
+	//    for every iteration after that.
+	public static synchronized ForkJoinPool GetSearchPool()
 	{
-		// Get list of all source (or target) labels:
-		Set<String> labels = null;
-		if(srcSide)
-			labels = nodeAligns.GetSrcItems();
-		else
-			labels = nodeAligns.GetTgtItems();
+		if(searchPool == null)
+			searchPool = new ForkJoinPool(numThreads);
+		return searchPool;
+	}
 
-		// Loop over all pairs of labels to find the two whose KL divergence
-		// is the smallest:
-		String[] minLabels = {"", ""};
-		double minDiff = Double.MAX_VALUE;
 
-		String[] minLabelByLabel = new String[ labels.size() ];
-		for(String label1 : labels)
-		{
-			for(String label2 : labels)
-			{
-				if(label1.equals(label2))
-					continue;
-				double diff = Double.MAX_VALUE;
-				if(srcSide)
-					diff = nodeAligns.CalcTGSKLDivergence(label1, label2);
-				else
-					diff = nodeAligns.CalcSGTKLDivergence(label1, label2);
-				if(diff < minDiff)
-				{
-					minLabels[0] = label1;
-					minLabels[1] = label2;
-					minDiff = diff;
-				}
-			}
-		}
-		//System.err.println("Closest labels are " + minLabels[0] + " and " +
-		//		minLabels[1] + " with difference " + minDiff);
-		return minLabels;
+	// MergedSupport function:
+	//    IDs of everything two merged labels were seen with, given their
+	//    rows of counts.
+	public static int[] MergedSupport(IntCountMap row1, IntCountMap row2)
+	{
+		IntCountMap merged = new IntCountMap(row1.Size() + row2.Size());
+		for(int key : row1.Keys())
+			merged.Add(key, 1);
+		for(int key : row2.Keys())
+			merged.Add(key, 1);
+		return merged.Keys();
 	}
-	
-	
-	public static void PrintCollapseTable(Map<String, List<String>> collapseMap)
+
+
+	// SupportCounts function:
+	//    A row's count for each of the given IDs, 0 where it has none.
+	public static int[] SupportCounts(IntCountMap row, int[] ids)
 	{
-		// x
-		for(String collapsed : collapseMap.keySet())
-			for(String original : collapseMap.get(collapsed))
-				System.out.println(original + "\t" + collapsed);
+		int[] counts = new int[ids.length];
+		for(int i = 0; i < ids.length; i++)
+			counts[i] = row.Get(ids[i]);
+		return counts;
 	}
-	
-	
+
+
+	public static void PrintCollapseTables(LabelClusters srcClusters,
+										   LabelClusters tgtClusters)
+	{
+		System.out.println("=== SOURCE-SIDE COLLAPSING ===");
+		srcClusters.Print(System.out);
+		System.out.println("\n=== TARGET-SIDE COLLAPSING ===");
+		tgtClusters.Print(System.out);
+	}
+
+
 	public static double L1NearestNeighborStdDev(BidirCondCounts<String, String> nodeAligns,
 												 boolean srcSide)
 	{
@@ -605,4 +1001,8 @@ public class LabelCollapser
 		stdDev = Math.sqrt(stdDev);
 		return stdDev;
 	}
+
+
+	// Number of pivots per side for the 'pivot' engine:
+	private static final int NUM_PIVOTS = 32;
 }
@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// LabelIndex class:
+//    Interns labels of type T to dense int IDs, in order of first use.
+//    IDs are never reused: when two labels are merged, the merged label is
+//    renamed onto one ID and the other ID is retired.
+public class LabelIndex<T>
+{
+	public LabelIndex()
+	{
+		ids = new HashMap<T, Integer>();
+		labels = new ArrayList<T>();
+		numRetired = 0;
+	}
+
+
+	// Intern function:
+	//    Returns the ID of the label, giving it a new one if it hasn't been
+	//    seen before.
+	public int Intern(T label)
+	{
+		Integer id = ids.get(label);
+		if(id != null)
+			return id;
+		ids.put(label, labels.size());
+		labels.add(label);
+		return (labels.size() - 1);
+	}
+
+
+	// GetID function:
+	//    Returns the ID of the label, or -1 if it isn't in use.
+	public int GetID(T label)
+	{
+		Integer id = ids.get(label);
+		if(id == null)
+			return -1;
+		return id;
+	}
+
+
+	// GetLabel function:
+	//    Returns the label with the given ID, or null if it was retired.
+	public T GetLabel(int id)
+	{
+		return labels.get(id);
+	}
+
+
+	// Number of IDs handed out so far, including retired ones:
+	public int Size()
+	{
+		return labels.size();
+	}
+
+	public boolean IsLive(int id)
+	{
+		return (labels.get(id) != null);
+	}
+
+	// Number of IDs still in use:
+	public int NumLive()
+	{
+		return (labels.size() - numRetired);
+	}
+
+
+	public void Rename(int id, T newLabel)
+	{
+		ids.remove(labels.get(id));
+		ids.put(newLabel, id);
+		labels.set(id, newLabel);
+	}
+
+
+	public void Retire(int id)
+	{
+		ids.remove(labels.get(id));
+		labels.set(id, null);
+		numRetired++;
+	}
+
+
+	// Member variables:
+
+	private Map<T, Integer> ids;
+	private List<T> labels;
+	private int numRetired;
+}
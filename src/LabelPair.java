@@ -0,0 +1,55 @@
+// LabelPair class:
+//    A candidate merge found by one of the search functions: two labels on
+//    the same side by interned ID, the first being the one that ranks first
+//    in their LabelClusters (so the one that's kept), and the distance
+//    between them.
+public class LabelPair
+{
+	// Constructor:
+	//    Puts the two IDs in order by the given clusters' ranks.
+	public LabelPair(LabelClusters clusters, int id1, int id2, double dist)
+	{
+		if(clusters.IsFirst(id1, id2))
+		{
+			this.id1 = id1;
+			this.id2 = id2;
+		}
+		else
+		{
+			this.id1 = id2;
+			this.id2 = id1;
+		}
+		this.key = clusters.PairKey(id1, id2);
+		this.dist = dist;
+	}
+
+
+	// IsBetterThan function:
+	//    Whether this pair should be merged before the other one, using the
+	//    tie-break in LabelCollapser.IsBetterPair.  Anything beats null.
+	public boolean IsBetterThan(LabelPair other)
+	{
+		if(other == null)
+			return true;
+		return LabelCollapser.IsBetterPair(dist, key, other.dist, other.key);
+	}
+
+
+	public static LabelPair Better(LabelPair pair1, LabelPair pair2)
+	{
+		if(pair1 == null)
+			return pair2;
+		if(pair2 != null && pair2.IsBetterThan(pair1))
+			return pair2;
+		return pair1;
+	}
+
+
+	// Member variables:
+
+	public final int id1;
+	public final int id2;
+	// The clusters' LabelClusters.PairKey:
+	public final long key;
+	public final double dist;
+}
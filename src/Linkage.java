@@ -0,0 +1,115 @@
+// Linkage class:
+//    Distances between clusters of labels that are kept up to date by the
+//    Lance-Williams formula as clusters are merged, rather than measured
+//    between the clusters' merged distributions:
+//       average  -- mean L1 distance between the two clusters' original
+//                   labels (UPGMA); a cluster's weight is its number of
+//                   labels
+//       weighted -- the same mean, but with each original label weighted
+//                   by its count; a cluster's weight is its marginal
+//       ward     -- Ward's criterion, the increase in the count-weighted
+//                   sum of squared Euclidean distances to the cluster
+//                   centroids that the merge would cause:
+//                      m1 m2 / (m1 + m2) * |p1 - p2|^2
+//                   for marginals m and distributions p
+//    A merged label's counts are the sum of its members', so its
+//    distribution is their count-weighted centroid, and Ward's distance
+//    measured from the counts agrees with the formula.  The two average
+//    linkages are only defined by the formula; when a merge on the other
+//    side changes some labels' distributions (with --side both), the
+//    distances among those labels are measured afresh between their
+//    distributions, which restarts the average for those pairs.  Ward's
+//    distance isn't local (see CollapseMetric.IsLocal): pooling two of
+//    one label's columns changes its squared distance to every other
+//    label, so a merge on the other side has the whole table measured
+//    afresh from the counts.
+public class Linkage implements MergeRuleMetric
+{
+	public static Linkage Average()
+	{
+		return new Linkage(AVERAGE);
+	}
+
+	public static Linkage Weighted()
+	{
+		return new Linkage(WEIGHTED);
+	}
+
+	public static Linkage Ward()
+	{
+		return new Linkage(WARD);
+	}
+
+
+	public double Dist(BidirCondCounts<String, String> nodeAligns,
+					   boolean srcSide, int id1, int id2)
+	{
+		SparseDist dist1 = (srcSide ? nodeAligns.GetTGSDist(id1) :
+							nodeAligns.GetSGTDist(id1));
+		SparseDist dist2 = (srcSide ? nodeAligns.GetTGSDist(id2) :
+							nodeAligns.GetSGTDist(id2));
+		if(type != WARD)
+			return SparseDist.L1Dist(dist1, dist2);
+		double m1 = dist1.Marginal();
+		double m2 = dist2.Marginal();
+		return m1 * m2 / (m1 + m2) * SparseDist.SquaredDist(dist1, dist2);
+	}
+
+
+	public boolean IsLocal()
+	{
+		return (type != WARD);
+	}
+
+
+	public int SettingsCode()
+	{
+		return 3 + type;
+	}
+
+
+	public double Weight(BidirCondCounts<String, String> nodeAligns,
+						 boolean srcSide, int id)
+	{
+		if(type == AVERAGE)
+			return 1.0;
+		else if(srcSide)
+			return nodeAligns.SrcCountByID(id);
+		else
+			return nodeAligns.TgtCountByID(id);
+	}
+
+
+	public double MergedDist(double dist1, double dist2, double dist12,
+							 double weight1, double weight2, double weightOther)
+	{
+		if(type != WARD)
+			return (weight1 * dist1 + weight2 * dist2) / (weight1 + weight2);
+		return ((weight1 + weightOther) * dist1 + (weight2 + weightOther) * dist2 -
+				weightOther * dist12) / (weight1 + weight2 + weightOther);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return NAMES[type];
+	}
+
+
+	private Linkage(int type)
+	{
+		this.type = type;
+	}
+
+
+	private static final int AVERAGE = 0;
+	private static final int WEIGHTED = 1;
+	private static final int WARD = 2;
+	private static final String[] NAMES = {"average", "weighted", "ward"};
+
+
+	// Member variables:
+
+	private int type;
+}
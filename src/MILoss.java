@@ -0,0 +1,125 @@
+// MILoss class:
+//    The criterion of Brown clustering: how much of the mutual information
+//    between source and target labels a merge would lose.  With the joint
+//    distribution p(s, t) estimated from the counts, merging two labels on
+//    one side loses, in bits,
+//       I(S; T) - I'(S; T) =
+//          1/N sum_t [ a lg(a / A) + b lg(b / B) - (a + b) lg((a + b) / (A + B)) ]
+//    where a and b are the two labels' counts with other-side label t, A
+//    and B their marginals, and N the total count; the other labels'
+//    shares of the information cancel out.  So the loss only depends on the
+//    two labels' own counts, which makes it local, and it's a sum of one
+//    term per column, which makes it separable: caches update it in O(1)
+//    per affected pair after a merge on the other side, rather than
+//    recomputing it, so a whole run costs O(n^2) per merge.
+//
+//    Each column's term (in bits times counts) is kept as a fixed-point
+//    integer, with TERM_SCALE units per bit, so that sums are exact (see
+//    SeparableMetric).  Where only one label has a count, the term is
+//    a lg((A + B) / A), and it's rounded per unit count so that it stays
+//    linear in a.  A column's term is at most a lg((A + B) / A) +
+//    b lg((A + B) / B) < (a + b) lg(A + B), so with int marginals it's
+//    below 2^32 * 32 bits, or 2^61 units.  A pair's terms add up to at
+//    most A lg((A + B) / A) + B lg((A + B) / B) <= A + B bits, plus half a
+//    unit of rounding per count, so a sum is below 2^57 units.  Sums are
+//    still added up with Math.addExact, so that anything beyond those
+//    bounds fails loudly instead of wrapping.
+public class MILoss implements SeparableMetric
+{
+	public double Dist(BidirCondCounts<String, String> nodeAligns,
+					   boolean srcSide, int id1, int id2)
+	{
+		SparseDist dist1;
+		SparseDist dist2;
+		if(srcSide)
+		{
+			dist1 = nodeAligns.GetTGSDist(id1);
+			dist2 = nodeAligns.GetTGSDist(id2);
+		}
+		else
+		{
+			dist1 = nodeAligns.GetSGTDist(id1);
+			dist2 = nodeAligns.GetSGTDist(id2);
+		}
+		return DistFromSum(nodeAligns, Sum(dist1, dist2), dist1.Marginal(),
+						   dist2.Marginal());
+	}
+
+
+	public long Sum(SparseDist dist1, SparseDist dist2)
+	{
+		long m1 = dist1.Marginal();
+		long m2 = dist2.Marginal();
+		long total = 0;
+		int i = 0;
+		int j = 0;
+		while(i < dist1.Size() || j < dist2.Size())
+		{
+			if(j == dist2.Size() ||
+			   (i < dist1.Size() && dist1.IDAt(i) < dist2.IDAt(j)))
+				total = Math.addExact(total, Term(dist1.CountAt(i++), 0, m1, m2));
+			else if(i == dist1.Size() || dist2.IDAt(j) < dist1.IDAt(i))
+				total = Math.addExact(total, Term(0, dist2.CountAt(j++), m1, m2));
+			else
+				total = Math.addExact(total, Term(dist1.CountAt(i++),
+												  dist2.CountAt(j++), m1, m2));
+		}
+		return total;
+	}
+
+
+	// Term function:
+	//    a lg(a / A) + b lg(b / B) - (a + b) lg((a + b) / (A + B)), written
+	//    as a lg(a (A + B) / ((a + b) A)) + b lg(b (A + B) / ((a + b) B)) so
+	//    that nothing large cancels out.  With b = 0 it's a lg((A + B) / A).
+	public long Term(long count1, long count2, long marginal1, long marginal2)
+	{
+		double total = marginal1 + marginal2;
+		if(count2 == 0)
+			return count1 * Math.round(Lg(total / marginal1) * TERM_SCALE);
+		if(count1 == 0)
+			return count2 * Math.round(Lg(total / marginal2) * TERM_SCALE);
+
+		double sum = count1 + count2;
+		double loss = count1 * Lg((count1 * total) / (sum * marginal1)) +
+			count2 * Lg((count2 * total) / (sum * marginal2));
+		return Math.round(loss * TERM_SCALE);
+	}
+
+
+	public double DistFromSum(BidirCondCounts<String, String> nodeAligns,
+							  long sum, long marginal1, long marginal2)
+	{
+		return sum / (TERM_SCALE * nodeAligns.NumTotalCounts());
+	}
+
+
+	public boolean IsLocal()
+	{
+		return true;
+	}
+
+
+	public int SettingsCode()
+	{
+		return 6;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "mi";
+	}
+
+
+	private static double Lg(double x)
+	{
+		return Math.log(x) / LOG_2;
+	}
+
+
+	private static final double LOG_2 = Math.log(2.0);
+	// Fixed-point units per bit in a column's term:
+	private static final double TERM_SCALE = 1 << 24;
+}
@@ -0,0 +1,48 @@
+import java.io.PrintStream;
+
+
+// MergeHistory class:
+//    Writes a collapse run as a compact merge history instead of printing
+//    the full collapse tables after every iteration.  The history starts
+//    with one line per initial label, giving its interned ID:
+//       S <tab> <src-id> <tab> <label>
+//       T <tab> <tgt-id> <tab> <label>
+//    followed by one line per merge:
+//       M <tab> <iteration> <tab> <S|T> <tab> <id1> <tab> <id2> <tab> <dist>
+//    where the cluster with id2 was merged into the cluster with id1, which
+//    keeps its ID.  The merged cluster's name is the two names joined with
+//    "|", as in the collapse tables.  ExtractLabelMaps turns a history back
+//    into label maps for any number of cut points.
+public class MergeHistory
+{
+	public MergeHistory(PrintStream out)
+	{
+		this.out = out;
+	}
+
+
+	// WriteLabels function:
+	//    Writes the initial labels on both sides with their IDs.
+	public void WriteLabels(BidirCondCounts<String, String> nodeAligns)
+	{
+		for(int src = 0; src < nodeAligns.NumSrcIDs(); src++)
+			if(nodeAligns.IsSrcItem(src))
+				out.println("S\t" + src + "\t" + nodeAligns.GetSrcLabel(src));
+		for(int tgt = 0; tgt < nodeAligns.NumTgtIDs(); tgt++)
+			if(nodeAligns.IsTgtItem(tgt))
+				out.println("T\t" + tgt + "\t" + nodeAligns.GetTgtLabel(tgt));
+	}
+
+
+	public void WriteMerge(int iteration, boolean srcSide, int id1, int id2,
+						   double dist)
+	{
+		out.println("M\t" + iteration + "\t" + (srcSide ? "S" : "T") + "\t" +
+					id1 + "\t" + id2 + "\t" + dist);
+	}
+
+
+	// Member variables:
+
+	private PrintStream out;
+}
@@ -0,0 +1,25 @@
+// MergeRuleMetric interface:
+//    A CollapseMetric whose distances to a merged label follow from the
+//    distances before the merge, the way the Lance-Williams formula gives
+//    them for average or Ward linkage.  Engines that keep distances
+//    between iterations use MergedDist after a merge instead of computing
+//    the merged label's distances from its counts, which makes a merge
+//    O(n) cheap updates rather than O(n) distance computations.
+//
+//    Each label carries a weight (its number of members, say, or its
+//    marginal count) that the rule may use; the engine keeps track of
+//    it, starting from Weight and adding the two weights on a merge.
+public interface MergeRuleMetric extends CollapseMetric
+{
+	// Weight function:
+	//    The weight of a label before anything is merged into it.
+	public double Weight(BidirCondCounts<String, String> nodeAligns,
+						 boolean srcSide, int id);
+
+	// MergedDist function:
+	//    Distance from a third label to the merge of labels 1 and 2, given
+	//    its distances to each of them (dist1, dist2), their distance to
+	//    each other, and the three labels' weights.
+	public double MergedDist(double dist1, double dist2, double dist12,
+							 double weight1, double weight2, double weightOther);
+}
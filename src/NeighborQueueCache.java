@@ -0,0 +1,236 @@
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+// NeighborQueueCache class:
+//    A DistanceCache that also remembers each label's nearest neighbor and
+//    keeps the labels in a priority queue ordered by that distance, so the
+//    closest pair no longer needs a scan over the whole table.  After a
+//    merge only the merged label and the labels whose nearest neighbor was
+//    one of the merged pair need a rescan of their row.
+//
+//    Nearest neighbors are chosen with LabelCollapser.IsBetterPair, so the
+//    head of the queue is always exactly the pair the brute-force search
+//    would pick.  (The nearest-neighbor-chain algorithm isn't used because
+//    most of the metrics, L1 between merged distributions among them,
+//    aren't reducible, and the chain would not give the greedy merge
+//    order.)
+//
+//    Replaced queue entries are only dropped once they reach the head, and
+//    a merge can replace one for every label, so the queue is rebuilt from
+//    the current nearest neighbors whenever it grows past MAX_QUEUE_FACTOR
+//    entries per slot; that keeps it to O(n) entries.
+public class NeighborQueueCache extends DistanceCache
+{
+	public NeighborQueueCache(BidirCondCounts<String, String> nodeAligns,
+							  boolean srcSide, CollapseMetric metric,
+							  LabelClusters clusters)
+	{
+		super(nodeAligns, srcSide, metric, clusters);
+
+		// Find each label's nearest neighbor and queue it up:
+		nearest = new int[numSlots];
+		versions = new int[numSlots];
+		queue = new PriorityQueue<Neighbor>(Math.max(1, numSlots),
+											new NeighborComparator());
+		for(int slot = 0; slot < numSlots; slot++)
+			if(IsLive(slot))
+				Rescan(slot);
+	}
+
+
+	// FindMinPair function:
+	//    Pops stale entries off the queue until the head is the current
+	//    nearest neighbor of a live label; that's the closest pair.
+	public LabelPair FindMinPair()
+	{
+		while(!queue.isEmpty())
+		{
+			Neighbor head = queue.peek();
+			if(IsLive(head.slot) && head.version == versions[head.slot])
+				return MakePair(head.slot, nearest[head.slot], head.dist);
+			queue.poll();
+		}
+		return null;
+	}
+
+
+	public void MergeLabels(int slot, int deadSlot)
+	{
+		super.MergeLabels(slot, deadSlot);
+		versions[deadSlot]++;
+
+		// Everyone else either pointed at one of the merged labels and
+		// needs a rescan, or just has to check the merged label's new
+		// distance against their current nearest neighbor:
+		for(int other = 0; other < numSlots; other++)
+		{
+			if(other == slot || !IsLive(other))
+				continue;
+			if(nearest[other] == slot || nearest[other] == deadSlot)
+				Rescan(other);
+			else
+				Offer(other, slot);
+		}
+		Rescan(slot);
+	}
+
+
+	// FindMutualPairs function:
+	//    Same as DistanceCache's, but the nearest neighbors are already
+	//    known.
+	public List<LabelPair> FindMutualPairs(double maxDist)
+	{
+		return MutualPairs(nearest, maxDist);
+	}
+
+
+	public void UpdatePairsAmong(int[] changed, int[] counts1, int[] counts2)
+	{
+		super.UpdatePairsAmong(changed, counts1, counts2);
+
+		// Only distances among the changed labels moved, so they are the
+		// only ones whose nearest neighbor can be different now, unless
+		// the metric isn't local:
+		if(!metric.IsLocal())
+		{
+			for(int slot = 0; slot < numSlots; slot++)
+				if(IsLive(slot))
+					Rescan(slot);
+			return;
+		}
+		for(int slot : changed)
+			Rescan(slot);
+	}
+
+
+	// Rescan function:
+	//    Finds the nearest neighbor of the label in the given slot from
+	//    scratch and queues it up.
+	private void Rescan(int slot)
+	{
+		nearest[slot] = -1;
+		long minKey = -1;
+		double minDiff = Double.MAX_VALUE;
+		for(int other = 0; other < numSlots; other++)
+		{
+			if(other == slot || !IsLive(other))
+				continue;
+			double diff = dists[Index(slot, other)];
+			if(diff > minDiff)
+				continue;
+			long key = clusters.PairKey(slot, other);
+			if(minKey < 0 ||
+			   LabelCollapser.IsBetterPair(diff, key, minDiff, minKey))
+			{
+				nearest[slot] = other;
+				minKey = key;
+				minDiff = diff;
+			}
+		}
+		Push(slot, minKey, minDiff);
+	}
+
+
+	// Offer function:
+	//    Makes the label in the candidate slot the nearest neighbor of the
+	//    label in the given slot if it's closer than the current one.
+	private void Offer(int slot, int candidate)
+	{
+		double diff = dists[Index(slot, candidate)];
+		long key = clusters.PairKey(slot, candidate);
+		int current = nearest[slot];
+		if(current >= 0 &&
+		   !LabelCollapser.IsBetterPair(diff, key, dists[Index(slot, current)],
+										clusters.PairKey(slot, current)))
+			return;
+		nearest[slot] = candidate;
+		Push(slot, key, diff);
+	}
+
+
+	// QueueBytes function:
+	//    Roughly the most memory the queue and nearest-neighbor arrays take
+	//    for the given number of slots, on top of the distance table.
+	public static long QueueBytes(long numSlots)
+	{
+		return (MAX_QUEUE_FACTOR * numSlots + 1) * ENTRY_BYTES + 8 * numSlots;
+	}
+
+
+	// Push function:
+	//    Queues up a slot's nearest neighbor, with the pair's key; a key of
+	//    -1 means it has none.
+	private void Push(int slot, long key, double diff)
+	{
+		// Older queue entries for this slot become stale:
+		versions[slot]++;
+		if(key >= 0)
+			queue.add(new Neighbor(slot, versions[slot], key, diff));
+		if(queue.size() > MAX_QUEUE_FACTOR * numSlots)
+			RebuildQueue();
+	}
+
+
+	// RebuildQueue function:
+	//    Replaces the queue with just the current entry of each live label
+	//    that has a nearest neighbor, dropping all the stale ones.
+	private void RebuildQueue()
+	{
+		queue.clear();
+		for(int slot = 0; slot < numSlots; slot++)
+		{
+			if(!IsLive(slot) || nearest[slot] < 0)
+				continue;
+			int other = nearest[slot];
+			queue.add(new Neighbor(slot, versions[slot], clusters.PairKey(slot, other),
+								   dists[Index(slot, other)]));
+		}
+	}
+
+
+	// Inner class for a queued nearest-neighbor entry:
+	private static class Neighbor
+	{
+		public Neighbor(int slot, int version, long key, double dist)
+		{
+			this.slot = slot;
+			this.version = version;
+			this.key = key;
+			this.dist = dist;
+		}
+
+		public int slot;
+		public int version;
+		public long key;
+		public double dist;
+	}
+
+	private static class NeighborComparator implements Comparator<Neighbor>
+	{
+		public int compare(Neighbor n1, Neighbor n2)
+		{
+			if(LabelCollapser.IsBetterPair(n1.dist, n1.key, n2.dist, n2.key))
+				return -1;
+			if(LabelCollapser.IsBetterPair(n2.dist, n2.key, n1.dist, n1.key))
+				return 1;
+			return 0;
+		}
+	}
+
+
+	// Queue entries allowed per slot before the stale ones are cleared out,
+	// and roughly how big an entry is, with its reference from the queue:
+	private static final int MAX_QUEUE_FACTOR = 2;
+	private static final long ENTRY_BYTES = 48;
+
+
+	// Member variables:
+
+	// Slot of each label's nearest neighbor (-1 if none):
+	private int[] nearest;
+	// Bumped whenever a slot's queue entry is replaced:
+	private int[] versions;
+	private PriorityQueue<Neighbor> queue;
+}
@@ -0,0 +1,40 @@
+import java.util.List;
+
+
+// PairSearch interface:
+//    One side's collapse engine, as LabelCollapser.RunCollapse drives it:
+//    it finds the closest pair of labels on its side by some
+//    CollapseMetric, and keeps whatever it holds on to between iterations
+//    up to date as labels are merged on either side.  Pairs are ranked
+//    with LabelCollapser.IsBetterPair, so every engine picks the same pair
+//    for the same metric.
+public interface PairSearch
+{
+	// FindMinPair function:
+	//    The closest pair of labels, or null if fewer than two are left.
+	public LabelPair FindMinPair();
+
+	// FindMutualPairs function:
+	//    Every pair of labels that are each other's nearest neighbors and
+	//    at most maxDist apart, closest first, for batched merging.  An
+	//    engine that doesn't know its labels' nearest neighbors may just
+	//    return the closest pair.
+	public List<LabelPair> FindMutualPairs(double maxDist);
+
+	// MergeLabels function:
+	//    To be called after two labels on this side have been merged in
+	//    the counts, which leaves the merged label in the first one's ID
+	//    and retires the second.
+	public void MergeLabels(int id1, int id2);
+
+	// UpdatePairsAmong function:
+	//    To be called after a merge on the other side, with the IDs of the
+	//    labels on this side whose distributions that changed, and each
+	//    one's joint counts with the first and second merged labels from
+	//    before the merge.
+	public void UpdatePairsAmong(int[] changed, int[] counts1, int[] counts2);
+
+	// NumEvals function:
+	//    Number of distances computed from counts so far.
+	public long NumEvals();
+}
@@ -1,27 +1,132 @@
-import java.util.Set;
-import java.util.concurrent.Callable;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
-class ParallelTask implements Callable<String>
+// ParallelTask class:
+//    Fork/join search for the closest pair of labels on one side.  The
+//    labels' IDs are laid out in an array and each task covers a range of
+//    rows of the upper triangle of the pair space, so every pair is looked
+//    at exactly once.  Ranges are split where the number of pairs (not
+//    rows) is halved, since early rows are much longer than late ones.
+//    Each task returns its best pair and the results are reduced on join.
+//    Pairs are compared by the given CollapseMetric, with ties broken by
+//    the side's LabelClusters.
+//
+//    For L1Metric, a PivotIndex can be given to skip pairs that can't be the
+//    closest.  The tasks then share the best distance found so far by any
+//    of them (as the bits of a double), so each one prunes against the
+//    whole search's progress, not only its own.  With DenseDists for the
+//    side, the dense distance is used to rule pairs out, and only pairs
+//    that might win are measured again with the sparse kernels.
+//    ForkJoinTask is Serializable, but tasks never leave the search.
+@SuppressWarnings("serial")
+class ParallelTask extends RecursiveTask<LabelPair>
 {
-	private String label;
 	private BidirCondCounts<String, String> nodeAligns;
+	private int[] ids;
+	private int firstRow;
+	private int lastRow;
+	private long grain;
 	private boolean srcSide;
+	private CollapseMetric metric;
+	private LabelClusters clusters;
+	private PivotIndex pivots;
+	private AtomicLong bound;
+	private DenseDists dense;
 
-	public ParallelTask(String label, BidirCondCounts<String, String> nodeAligns, boolean srcSide)
+	public ParallelTask(BidirCondCounts<String, String> nodeAligns, int[] ids,
+						int firstRow, int lastRow, long grain, boolean srcSide,
+						CollapseMetric metric, LabelClusters clusters,
+						PivotIndex pivots, AtomicLong bound, DenseDists dense)
 	{
-		this.label = label;
 		this.nodeAligns = nodeAligns;
+		this.ids = ids;
+		this.firstRow = firstRow;
+		this.lastRow = lastRow;
+		this.grain = grain;
 		this.srcSide = srcSide;
+		this.metric = metric;
+		this.clusters = clusters;
+		this.pivots = pivots;
+		this.bound = bound;
+		this.dense = dense;
 	}
 
-	public String call()
+	protected LabelPair compute()
 	{
-		Set<String> labels;
-		if(srcSide)
-			labels = nodeAligns.GetSrcItems();
-		else
-			labels = nodeAligns.GetTgtItems();
-
-		return LabelCollapser.getClosestLabelByL1( this.label, this.nodeAligns, labels, this.srcSide );
-	} 
+		long pairs = PairsBetween(firstRow, lastRow);
+		if(pairs <= grain || lastRow - firstRow <= 1)
+			return ScanRows();
+
+		// Split the rows so that both halves get about the same number of
+		// pairs:
+		int split = firstRow + 1;
+		while(split < lastRow - 1 && PairsBetween(firstRow, split + 1) <= pairs / 2)
+			split++;
+		ParallelTask left = new ParallelTask(nodeAligns, ids, firstRow, split,
+											 grain, srcSide, metric, clusters, pivots,
+											 bound, dense);
+		ParallelTask right = new ParallelTask(nodeAligns, ids, split, lastRow,
+											  grain, srcSide, metric, clusters, pivots,
+											  bound, dense);
+		left.fork();
+		LabelPair rightBest = right.compute();
+		return LabelPair.Better(left.join(), rightBest);
+	}
+
+	private LabelPair ScanRows()
+	{
+		LabelPair best = null;
+		long pruned = 0;
+		for(int row = firstRow; row < lastRow; row++)
+		{
+			for(int col = row + 1; col < ids.length; col++)
+			{
+				if(pivots != null &&
+				   pivots.CanPrune(ids[row], ids[col],
+								   Double.longBitsToDouble(bound.get())))
+				{
+					pruned++;
+					continue;
+				}
+
+				double diff;
+				if(dense != null && best != null)
+				{
+					diff = dense.Dist(ids[row], ids[col]);
+					if(diff > best.dist + DenseDists.Slack(best.dist))
+						continue;
+				}
+				diff = metric.Dist(nodeAligns, srcSide, ids[row], ids[col]);
+
+				// Only bother with a new pair if this could win:
+				if(best != null && diff > best.dist)
+					continue;
+				best = LabelPair.Better(best, new LabelPair(clusters, ids[row],
+															 ids[col], diff));
+				if(pivots != null)
+					LowerBound(best.dist);
+			}
+		}
+		if(pivots != null)
+			pivots.CountPruned(pruned);
+		return best;
+	}
+
+	// LowerBound function:
+	//    Brings the shared best distance down to the given one, if it's
+	//    lower.
+	private void LowerBound(double dist)
+	{
+		long current = bound.get();
+		while(dist < Double.longBitsToDouble(current) &&
+			  !bound.compareAndSet(current, Double.doubleToLongBits(dist)))
+			current = bound.get();
+	}
+
+	// Number of pairs in rows [from, to) of the upper triangle:
+	private long PairsBetween(int from, int to)
+	{
+		long n = ids.length;
+		return (to - from) * (2 * n - from - to - 1) / 2;
+	}
 }
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+
+// PipelinedInputStream class:
+//    Reads a source stream on its own thread, so that decompression (or
+//    waiting on a pipe) overlaps with parsing.  The reading thread fills
+//    blocks of bytes and hands them over through a bounded queue; reading
+//    from this stream takes them back off.  If the source starts with the
+//    gzip magic number it's inflated on the reading thread as well.
+//
+//    Errors on the reading thread are passed along and thrown from the
+//    next read.
+public class PipelinedInputStream extends InputStream
+{
+	public PipelinedInputStream(InputStream source)
+	{
+		this.source = source;
+		queue = new ArrayBlockingQueue<byte[]>(QUEUE_BLOCKS);
+		block = null;
+		blockPos = 0;
+		error = null;
+		finished = false;
+		reader = new Thread(new Runnable() {
+				public void run() { ReadSource(); }
+			}, "input-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+
+	// IsGzipped function:
+	//    Whether the stream starts with the gzip magic number.  The bytes
+	//    looked at are pushed back.
+	public static boolean IsGzipped(PushbackInputStream in) throws IOException
+	{
+		int b1 = in.read();
+		int b2 = (b1 < 0 ? -1 : in.read());
+		if(b2 >= 0)
+			in.unread(b2);
+		if(b1 >= 0)
+			in.unread(b1);
+		return (b1 == GZIP_MAGIC_1 && b2 == GZIP_MAGIC_2);
+	}
+
+
+	public int read() throws IOException
+	{
+		if(!NextBlock())
+			return -1;
+		return (block[blockPos++] & 0xff);
+	}
+
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+		if(length == 0)
+			return 0;
+		if(!NextBlock())
+			return -1;
+		int n = Math.min(length, block.length - blockPos);
+		System.arraycopy(block, blockPos, bytes, offset, n);
+		blockPos += n;
+		return n;
+	}
+
+	public int available()
+	{
+		return (block == null ? 0 : block.length - blockPos);
+	}
+
+	public void close() throws IOException
+	{
+		finished = true;
+		reader.interrupt();
+		source.close();
+	}
+
+
+	// Makes sure there are unread bytes in the current block, waiting for
+	// the reading thread if needed.  Returns false at the end of the source.
+	private boolean NextBlock() throws IOException
+	{
+		while(block == null || blockPos == block.length)
+		{
+			if(finished)
+				return false;
+			try
+			{
+				block = queue.take();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading input");
+			}
+			blockPos = 0;
+			if(block == END_OF_INPUT)
+			{
+				finished = true;
+				if(error != null)
+					throw error;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Body of the reading thread:
+	private void ReadSource()
+	{
+		try
+		{
+			PushbackInputStream pushback = new PushbackInputStream(source, 2);
+			InputStream in = pushback;
+			if(IsGzipped(pushback))
+				in = new GZIPInputStream(pushback, BLOCK_SIZE);
+
+			byte[] buffer = new byte[BLOCK_SIZE];
+			int filled = 0;
+			int n;
+			while((n = in.read(buffer, filled, buffer.length - filled)) >= 0)
+			{
+				filled += n;
+				if(filled == buffer.length)
+				{
+					queue.put(buffer);
+					buffer = new byte[BLOCK_SIZE];
+					filled = 0;
+				}
+			}
+			if(filled > 0)
+				queue.put(Arrays.copyOf(buffer, filled));
+		}
+		catch(IOException e)
+		{
+			error = e;
+		}
+		catch(InterruptedException e)
+		{
+			// Closed before the end of the source; nobody's waiting.
+			return;
+		}
+
+		try
+		{
+			queue.put(END_OF_INPUT);
+		}
+		catch(InterruptedException e)
+		{
+			return;
+		}
+	}
+
+
+	private static final int BLOCK_SIZE = 1 << 18;
+	private static final int QUEUE_BLOCKS = 8;
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+	private static final byte[] END_OF_INPUT = new byte[0];
+
+
+	// Member variables:
+
+	private InputStream source;
+	private BlockingQueue<byte[]> queue;
+	private Thread reader;
+	private byte[] block;
+	private int blockPos;
+	private volatile IOException error;
+	private boolean finished;
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// PivotIndex class:
+//    Lower bounds on the L1 distances between the labels on one side of a
+//    BidirCondCounts table, for pruning the closest-pair search.  A few
+//    labels' distributions are kept as pivots, and every label's distance
+//    to each pivot is stored; by the triangle inequality, two labels can't
+//    be closer together than the difference of their distances to any one
+//    pivot.
+//
+//    Pivots are chosen farthest-first, so they're spread out.  A pivot is
+//    a copy of a distribution as it was when the index was built, not a
+//    live label, so it stays a valid reference point after the label it
+//    came from is merged; only the stored distances of labels whose own
+//    distributions change have to be recomputed, with Update.  That's the
+//    merged label after a merge on this side, and everything seen with
+//    either of the merged labels after a merge on the other side.
+public class PivotIndex
+{
+	public PivotIndex(BidirCondCounts<String, String> nodeAligns, boolean srcSide,
+					  int numPivots)
+	{
+		this.nodeAligns = nodeAligns;
+		this.srcSide = srcSide;
+		if(srcSide)
+			numSlots = nodeAligns.NumSrcIDs();
+		else
+			numSlots = nodeAligns.NumTgtIDs();
+		numEvals = 0;
+		numPruned = new LongAdder();
+
+		// Pick the pivots farthest-first, starting from the first label.
+		// minDists holds each label's distance to its closest pivot so far:
+		double[] minDists = new double[numSlots];
+		Arrays.fill(minDists, Double.MAX_VALUE);
+		pivots = new SparseDist[numPivots];
+		int pivot = 0;
+		while(pivot < numSlots && !IsLive(pivot))
+			pivot++;
+		this.numPivots = 0;
+		while(pivot < numSlots && this.numPivots < numPivots)
+		{
+			pivots[this.numPivots++] = Dist(pivot);
+			int next = -1;
+			for(int slot = 0; slot < numSlots; slot++)
+			{
+				if(!IsLive(slot))
+					continue;
+				double d = SparseDist.L1Dist(Dist(slot), Dist(pivot));
+				numEvals++;
+				minDists[slot] = Math.min(minDists[slot], d);
+				if(minDists[slot] > 0.0 && (next < 0 || minDists[slot] > minDists[next]))
+					next = slot;
+			}
+			if(next < 0)
+				break;  // Everything left is a copy of a pivot
+			pivot = next;
+		}
+
+		pivotDists = new double[numSlots * this.numPivots];
+		for(int slot = 0; slot < numSlots; slot++)
+			if(IsLive(slot))
+				Update(slot);
+	}
+
+
+	// Update function:
+	//    Recomputes the stored pivot distances for a label whose
+	//    distribution has changed.
+	public void Update(int slot)
+	{
+		SparseDist dist = Dist(slot);
+		for(int p = 0; p < numPivots; p++)
+			pivotDists[slot * numPivots + p] = SparseDist.L1Dist(dist, pivots[p]);
+		numEvals += numPivots;
+	}
+
+	public void Update(int[] slots)
+	{
+		for(int slot : slots)
+			Update(slot);
+	}
+
+
+	// LowerBound function:
+	//    A lower bound on the L1 distance between the labels in two slots.
+	public double LowerBound(int slot1, int slot2)
+	{
+		int base1 = slot1 * numPivots;
+		int base2 = slot2 * numPivots;
+		double bound = 0.0;
+		for(int p = 0; p < numPivots; p++)
+			bound = Math.max(bound, Math.abs(pivotDists[base1 + p] - pivotDists[base2 + p]));
+		return bound;
+	}
+
+
+	// CanPrune function:
+	//    Whether the pair of labels in two slots is certainly farther apart
+	//    than the given distance, so can't be (or tie with) the closest
+	//    pair.  The bound is padded a little against rounding in the
+	//    stored distances.
+	public boolean CanPrune(int slot1, int slot2, double dist)
+	{
+		// Any one pivot is enough:
+		double limit = dist + ROUNDING;
+		int base1 = slot1 * numPivots;
+		int base2 = slot2 * numPivots;
+		for(int p = 0; p < numPivots; p++)
+			if(Math.abs(pivotDists[base1 + p] - pivotDists[base2 + p]) > limit)
+				return true;
+		return false;
+	}
+
+
+	// SeedBound function:
+	//    A quick upper bound on the closest pair's distance among the given
+	//    labels, to prune with from the start of a search: labels are
+	//    sorted by their distance to the first pivot, and neighbors in that
+	//    order (which are likely to be close) are measured.
+	public double SeedBound(int[] slots)
+	{
+		if(numPivots == 0 || slots.length < 2)
+			return Double.MAX_VALUE;
+		Integer[] order = new Integer[slots.length];
+		for(int i = 0; i < slots.length; i++)
+			order[i] = slots[i];
+		Arrays.sort(order, new FirstPivotComparator());
+		double bound = Double.MAX_VALUE;
+		for(int i = 1; i < order.length; i++)
+			bound = Math.min(bound, SparseDist.L1Dist(Dist(order[i - 1]), Dist(order[i])));
+		numEvals += slots.length - 1;
+		return bound;
+	}
+
+
+	// NumEvals function:
+	//    Distances computed by the index itself so far.
+	public long NumEvals()
+	{
+		return numEvals;
+	}
+
+	// NumPruned function:
+	//    Pairs searches have skipped thanks to the index so far.
+	public long NumPruned()
+	{
+		return numPruned.sum();
+	}
+
+	public void CountPruned(long n)
+	{
+		numPruned.add(n);
+	}
+
+
+	private SparseDist Dist(int slot)
+	{
+		if(srcSide)
+			return nodeAligns.GetTGSDist(slot);
+		else
+			return nodeAligns.GetSGTDist(slot);
+	}
+
+	private boolean IsLive(int slot)
+	{
+		if(srcSide)
+			return nodeAligns.IsSrcItem(slot);
+		else
+			return nodeAligns.IsTgtItem(slot);
+	}
+
+
+	private class FirstPivotComparator implements Comparator<Integer>
+	{
+		public int compare(Integer slot1, Integer slot2)
+		{
+			return Double.compare(pivotDists[slot1 * numPivots],
+								  pivotDists[slot2 * numPivots]);
+		}
+	}
+
+
+	// Slack on lower bounds for floating-point error; L1 distances are at
+	// most 2.0, so their rounding error is far smaller than this:
+	private static final double ROUNDING = 1e-9;
+
+
+	// Member variables:
+
+	private BidirCondCounts<String, String> nodeAligns;
+	private boolean srcSide;
+	private int numSlots;
+	private int numPivots;
+	private SparseDist[] pivots;
+	// Distance from each slot's label to each pivot, slot-major:
+	private double[] pivotDists;
+	private long numEvals;
+	private LongAdder numPruned;
+}
@@ -0,0 +1,120 @@
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+
+// RunMetrics class:
+//    Times each iteration of a collapse run and records what it cost.  For
+//    every iteration that's run (not replayed from a checkpoint) it writes
+//    a CSV line to the metrics file, if there is one:
+//       iteration, side (S or T), search time in ms, merge time in ms,
+//       distance evaluations, distance of the merged pair, live source,
+//       target and joint labels after the merge, used heap in bytes
+//    commits a CollapseIterationEvent for Flight Recorder, and updates the
+//    run's CollapseMonitor, if it has one.  The search time is the time
+//    taken to choose the pair; the merge time covers the merge itself and
+//    bringing any distance caches up to date, but not printing the
+//    collapse tables.
+public class RunMetrics
+{
+	// Constructor:
+	//    Records to the given file, or only to Flight Recorder if it's null.
+	public RunMetrics(String metricsFile, CollapseMonitor monitor)
+	throws FileNotFoundException
+	{
+		this.monitor = monitor;
+		out = null;
+		if(metricsFile != null)
+		{
+			// Flush every line, so the file can be watched during a run:
+			out = new PrintStream(new BufferedOutputStream(
+				new FileOutputStream(metricsFile)), true);
+			out.println("iteration,side,search_ms,merge_ms,dist_evals,dist," +
+						"src_labels,tgt_labels,joint_labels,heap_bytes");
+		}
+		event = null;
+	}
+
+
+	public void StartSearch()
+	{
+		event = new CollapseIterationEvent();
+		event.begin();
+		searchStart = System.nanoTime();
+	}
+
+
+	public void EndSearch()
+	{
+		searchEnd = System.nanoTime();
+	}
+
+
+	// EndIteration function:
+	//    To be called once the chosen pair is merged and the caches are up
+	//    to date; distEvals is the number of distances computed during the
+	//    whole iteration.
+	public void EndIteration(int iteration, boolean srcSide, double dist,
+							 long distEvals,
+							 BidirCondCounts<String, String> nodeAligns)
+	{
+		long mergeEnd = System.nanoTime();
+		Runtime runtime = Runtime.getRuntime();
+		long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+
+		if(out != null)
+		{
+			out.println(iteration + "," + (srcSide ? "S" : "T") + "," +
+						((searchEnd - searchStart) / 1e6) + "," +
+						((mergeEnd - searchEnd) / 1e6) + "," + distEvals + "," +
+						dist + "," + nodeAligns.NumSrcItems() + "," +
+						nodeAligns.NumTgtItems() + "," + nodeAligns.NumPairs() +
+						"," + heapUsed);
+		}
+
+		if(monitor != null)
+			monitor.Update(iteration, dist, mergeEnd - searchStart, nodeAligns);
+
+		event.end();
+		if(event.shouldCommit())
+		{
+			event.iteration = iteration;
+			event.side = (srcSide ? "S" : "T");
+			event.searchTime = searchEnd - searchStart;
+			event.mergeTime = mergeEnd - searchEnd;
+			event.distEvals = distEvals;
+			event.distance = dist;
+			event.srcLabels = nodeAligns.NumSrcItems();
+			event.tgtLabels = nodeAligns.NumTgtItems();
+			event.jointLabels = nodeAligns.NumPairs();
+			event.heapUsed = heapUsed;
+			event.commit();
+		}
+		event = null;
+	}
+
+
+	// NumPairs function:
+	//    Number of distance evaluations in a full search of n labels.
+	public static long NumPairs(int n)
+	{
+		return (long)n * (n - 1) / 2;
+	}
+
+
+	public void Close()
+	{
+		if(out != null)
+			out.close();
+	}
+
+
+	// Member variables:
+
+	private PrintStream out;
+	private CollapseMonitor monitor;
+	private CollapseIterationEvent event;
+	private long searchStart;
+	private long searchEnd;
+}
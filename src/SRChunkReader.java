@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// SRChunkReader class:
+//    Reads one byte range of a ScorableRule file for
+//    InputReader.FillFromScorableRuleFileParallel.  The range is widened to
+//    whole lines: a reader skips the partial line its range starts in (the
+//    previous range's reader takes it) and finishes the line its range ends
+//    in.  Only the type and LHS columns are looked at, straight from the
+//    bytes, and the reader counts how many times it sees each LHS in its
+//    own table, so the readers share nothing until the tables are merged.
+//    The table keeps LHSs in the order they were first seen, so that
+//    merging the chunks in file order interns labels in the same order as
+//    the sequential reader.
+class SRChunkReader implements Callable<Map<String, int[]>>
+{
+	private String srFile;
+	private long start;
+	private long end;
+	private boolean includeLex;
+	private boolean includePhr;
+	private boolean includeGra;
+
+	public SRChunkReader(String srFile, long start, long end, boolean includeLex,
+						 boolean includePhr, boolean includeGra)
+	{
+		this.srFile = srFile;
+		this.start = start;
+		this.end = end;
+		this.includeLex = includeLex;
+		this.includePhr = includePhr;
+		this.includeGra = includeGra;
+	}
+
+	public Map<String, int[]> call() throws IOException
+	{
+		Map<String, int[]> lhsCounts = new LinkedHashMap<String, int[]>();
+		FileChannel channel = FileChannel.open(Paths.get(srFile),
+											   StandardOpenOption.READ);
+		try
+		{
+			// Back up one byte so we can tell whether the range starts at
+			// the beginning of a line:
+			long pos = Math.max(start - 1, 0);
+			boolean skipping = (start > 0);
+			long lineStart = start;
+			byte[] line = new byte[256];
+			int lineLen = 0;
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			channel.position(pos);
+			while(lineStart < end && channel.read(buffer) > 0)
+			{
+				buffer.flip();
+				while(buffer.hasRemaining() && lineStart < end)
+				{
+					byte b = buffer.get();
+					pos++;
+					if(b == '\n')
+					{
+						if(!skipping)
+							CountLine(line, lineLen, lhsCounts);
+						skipping = false;
+						lineLen = 0;
+						lineStart = pos;
+					}
+					else if(!skipping)
+					{
+						if(lineLen == line.length)
+							line = Arrays.copyOf(line, line.length * 2);
+						line[lineLen++] = b;
+					}
+				}
+				buffer.clear();
+			}
+
+			// The last line of the file may not have a newline:
+			if(!skipping && lineStart < end && lineLen > 0)
+				CountLine(line, lineLen, lhsCounts);
+		}
+		finally
+		{
+			channel.close();
+		}
+		return lhsCounts;
+	}
+
+	// Counts the LHS of one line if it's of a type we're including.  Same
+	// column rules as the sequential reader: the line is trimmed and split
+	// on " ||| ".
+	private void CountLine(byte[] line, int lineLen, Map<String, int[]> lhsCounts)
+	{
+		int first = 0;
+		int last = lineLen;
+		while(first < last && (line[first] & 0xff) <= ' ')
+			first++;
+		while(last > first && (line[last - 1] & 0xff) <= ' ')
+			last--;
+
+		int sep1 = FindSeparator(line, first, last);
+		if(sep1 < 0)
+			return;
+		if(sep1 - first == 1)
+		{
+			byte type = line[first];
+			if((type == 'L' && !includeLex) || (type == 'P' && !includePhr) ||
+			   (type == 'G' && !includeGra))
+				return;
+		}
+		int lhsStart = sep1 + SEPARATOR.length;
+		int sep2 = FindSeparator(line, lhsStart, last);
+		int lhsEnd = (sep2 < 0 ? last : sep2);
+
+		// Decoded the same way FileReader would:
+		String lhs = new String(line, lhsStart, lhsEnd - lhsStart);
+		int[] count = lhsCounts.get(lhs);
+		if(count == null)
+			lhsCounts.put(lhs, new int[] {1});
+		else
+			count[0]++;
+	}
+
+	// Position of the first " ||| " in line[from, to), or -1:
+	private static int FindSeparator(byte[] line, int from, int to)
+	{
+		for(int i = from; i + SEPARATOR.length <= to; i++)
+		{
+			int j = 0;
+			while(j < SEPARATOR.length && line[i + j] == SEPARATOR[j])
+				j++;
+			if(j == SEPARATOR.length)
+				return i;
+		}
+		return -1;
+	}
+
+	private static final byte[] SEPARATOR = {' ', '|', '|', '|', ' '};
+}
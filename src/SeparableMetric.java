@@ -0,0 +1,33 @@
+// SeparableMetric interface:
+//    A CollapseMetric whose distance between two labels comes from their
+//    marginals and an integer sum, over the labels on the other side, of a
+//    term that only depends on the two labels' counts with that label and
+//    their marginals.  Merging two labels on the other side leaves the
+//    marginals alone and changes two columns into one, so an engine that
+//    keeps the sums can swap the two old columns' terms for the merged
+//    column's in O(1) per pair (see DistanceCache.UpdatePairsAmong).  The
+//    terms are integers so that this is exact: the updated sum is the one
+//    Sum would give from the merged counts.
+public interface SeparableMetric extends CollapseMetric
+{
+	// Sum function:
+	//    The sum of the terms over the union of the two distributions'
+	//    supports.
+	public long Sum(SparseDist dist1, SparseDist dist2);
+
+	// Term function:
+	//    One column's term, given each label's count in it and marginal.
+	//    Must never be negative, must be 0 where both counts are, and must
+	//    be the same whichever way round the labels are given.  Where one
+	//    count is 0, it must be linear in the other, so that merging two
+	//    columns only one of the labels has counts in leaves their sum
+	//    alone; engines only update the pairs of labels that both had
+	//    counts in the merged columns.
+	public long Term(long count1, long count2, long marginal1, long marginal2);
+
+	// DistFromSum function:
+	//    The distance between two labels with the given sum and marginals,
+	//    as Dist gives it.
+	public double DistFromSum(BidirCondCounts<String, String> nodeAligns,
+							  long sum, long marginal1, long marginal2);
+}
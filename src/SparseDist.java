@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+
+// SparseDist class:
+//    A normalized conditional distribution stored as a sorted sparse
+//    vector: parallel arrays of the other side's IDs (ascending), their
+//    raw counts, their probabilities and the base-2 logs of those
+//    probabilities.  The counts and marginal are kept for Divergence,
+//    which smooths the distribution on the fly.
+//    BidirCondCounts builds one for a label the first time a distance is
+//    asked for after the label's counts change, and the distance kernels
+//    below walk two of them with a merge-join without allocating anything.
+//
+//    Instances are never modified after construction, so they can be shared
+//    between search threads.
+public class SparseDist
+{
+	public SparseDist(IntCountMap counts, int marginal)
+	{
+		int[] keys = counts.Keys();
+		Arrays.sort(keys);
+		int[] c = new int[keys.length];
+		double[] p = new double[keys.length];
+		double[] lp = new double[keys.length];
+		for(int i = 0; i < keys.length; i++)
+		{
+			c[i] = counts.Get(keys[i]);
+			p[i] = (double)c[i] / (double)marginal;
+			lp[i] = Math.log(p[i]) / LOG_2;
+		}
+		ids = keys;
+		this.counts = c;
+		this.marginal = marginal;
+		probs = p;
+		logProbs = lp;
+	}
+
+
+	public int Size()
+	{
+		return ids.length;
+	}
+
+	public int IDAt(int i)
+	{
+		return ids[i];
+	}
+
+	public int CountAt(int i)
+	{
+		return counts[i];
+	}
+
+	public int Marginal()
+	{
+		return marginal;
+	}
+
+	public double ProbAt(int i)
+	{
+		return probs[i];
+	}
+
+	public double LogProbAt(int i)
+	{
+		return logProbs[i];
+	}
+
+
+	// L1Dist function:
+	//    Sum of the absolute differences in probability over the union of
+	//    the two supports.  It's worked out exactly, from the counts, as
+	//    L1Numerator / (marginal1 * marginal2), so the result is the same
+	//    whichever way round the arguments are given, and the same as what
+	//    DistanceCache gets when it updates a numerator instead of
+	//    recomputing it.
+	public static double L1Dist(SparseDist dist1, SparseDist dist2)
+	{
+		return L1FromNumerator(L1Numerator(dist1, dist2), dist1.marginal,
+							   dist2.marginal);
+	}
+
+
+	// L1Numerator function:
+	//    The sum over the union of the two supports of
+	//    |count1 * marginal2 - count2 * marginal1|.  Marginals are ints, so
+	//    this is at most 2 * marginal1 * marginal2 < 2^63 and can't overflow.
+	public static long L1Numerator(SparseDist dist1, SparseDist dist2)
+	{
+		int[] ids1 = dist1.ids;
+		int[] ids2 = dist2.ids;
+		int[] counts1 = dist1.counts;
+		int[] counts2 = dist2.counts;
+		long m1 = dist1.marginal;
+		long m2 = dist2.marginal;
+		long total = 0;
+		int i = 0;
+		int j = 0;
+		while(i < ids1.length && j < ids2.length)
+		{
+			if(ids1[i] == ids2[j])
+				total += Math.abs(counts1[i++] * m2 - counts2[j++] * m1);
+			else if(ids1[i] < ids2[j])
+				total += counts1[i++] * m2;
+			else
+				total += counts2[j++] * m1;
+		}
+
+		// Whatever's left over is only in one of the two:
+		while(i < ids1.length)
+			total += counts1[i++] * m2;
+		while(j < ids2.length)
+			total += counts2[j++] * m1;
+		return total;
+	}
+
+
+	public static double L1FromNumerator(long numerator, long marginal1, long marginal2)
+	{
+		return numerator / (double)(marginal1 * marginal2);
+	}
+
+
+	// SquaredDist function:
+	//    Squared Euclidean distance between the two distributions, added up
+	//    in ID order like L1Dist.
+	public static double SquaredDist(SparseDist dist1, SparseDist dist2)
+	{
+		int[] ids1 = dist1.ids;
+		int[] ids2 = dist2.ids;
+		double[] probs1 = dist1.probs;
+		double[] probs2 = dist2.probs;
+		double total = 0.0;
+		int i = 0;
+		int j = 0;
+		while(i < ids1.length && j < ids2.length)
+		{
+			double diff;
+			if(ids1[i] == ids2[j])
+				diff = probs1[i++] - probs2[j++];
+			else if(ids1[i] < ids2[j])
+				diff = probs1[i++];
+			else
+				diff = probs2[j++];
+			total += diff * diff;
+		}
+		while(i < ids1.length)
+		{
+			total += probs1[i] * probs1[i];
+			i++;
+		}
+		while(j < ids2.length)
+		{
+			total += probs2[j] * probs2[j];
+			j++;
+		}
+		return total;
+	}
+
+
+	// KLDivergence function:
+	//    Symmetrized KL divergence KL(dist1 || dist2) + KL(dist2 || dist1)
+	//    in bits, over the IDs the two distributions share; we're treating
+	//    0 log(0) and p log(\infty) both as 0.  The two directions' terms
+	//    for an ID add up to (p1 - p2) * (lg p1 - lg p2), so with the logs
+	//    cached each shared ID costs one multiply-add.
+	public static double KLDivergence(SparseDist dist1, SparseDist dist2)
+	{
+		int[] ids1 = dist1.ids;
+		int[] ids2 = dist2.ids;
+		double[] probs1 = dist1.probs;
+		double[] probs2 = dist2.probs;
+		double[] logs1 = dist1.logProbs;
+		double[] logs2 = dist2.logProbs;
+		double diff = 0.0;
+		int i = 0;
+		int j = 0;
+		while(i < ids1.length && j < ids2.length)
+		{
+			if(ids1[i] == ids2[j])
+			{
+				diff += (probs1[i] - probs2[j]) * (logs1[i] - logs2[j]);
+				i++;
+				j++;
+			}
+			else if(ids1[i] < ids2[j])
+				i++;
+			else
+				j++;
+		}
+		return diff;
+	}
+
+
+	private static final double LOG_2 = Math.log(2.0);
+
+
+	// Member variables:
+
+	private final int[] ids;
+	private final int[] counts;
+	private final int marginal;
+	private final double[] probs;
+	private final double[] logProbs;
+}
@@ -0,0 +1,110 @@
+// StopCondition class:
+//    When a greedy collapse run should stop: after a fixed number of
+//    iterations, once the number of joint (src, tgt) labels is down to a
+//    target size, or once the closest remaining pair is farther apart than
+//    a distance threshold.  Any combination may be set; the run stops as
+//    soon as one of them is met.  The run can also be asked to stop early
+//    from another thread, e.g. through CollapseMonitor.
+public class StopCondition
+{
+	public static final int NO_LIMIT = -1;
+
+
+	public StopCondition()
+	{
+		maxIters = NO_LIMIT;
+		maxJointLabels = NO_LIMIT;
+		maxDist = Double.MAX_VALUE;
+		stopRequested = false;
+	}
+
+
+	public static StopCondition Iters(int maxIters)
+	{
+		StopCondition stop = new StopCondition();
+		stop.maxIters = maxIters;
+		return stop;
+	}
+
+	public static StopCondition JointLabels(int maxJointLabels)
+	{
+		StopCondition stop = new StopCondition();
+		stop.maxJointLabels = maxJointLabels;
+		return stop;
+	}
+
+	public static StopCondition Dist(double maxDist)
+	{
+		StopCondition stop = new StopCondition();
+		stop.maxDist = maxDist;
+		return stop;
+	}
+
+
+	// IsDone function:
+	//    Whether the run should stop before starting another iteration,
+	//    given how many have been done so far.  NumPairs is kept up to date
+	//    by the merges, so this doesn't rescan the tables.
+	public boolean IsDone(int itersDone, BidirCondCounts<String, String> nodeAligns)
+	{
+		if(stopRequested)
+			return true;
+		if(maxIters != NO_LIMIT && itersDone >= maxIters)
+			return true;
+		if(maxJointLabels != NO_LIMIT && nodeAligns.NumPairs() <= maxJointLabels)
+			return true;
+		return false;
+	}
+
+
+	// IsTooFar function:
+	//    Whether the best merge found this iteration is past the distance
+	//    threshold, in which case the run should stop without making it.
+	public boolean IsTooFar(double dist)
+	{
+		return (dist > maxDist);
+	}
+
+
+	// RequestStop function:
+	//    Makes the run stop before its next iteration, as if the condition
+	//    had been met.  Safe to call from any thread.
+	public void RequestStop()
+	{
+		stopRequested = true;
+	}
+
+
+	public int GetMaxIters()
+	{
+		return maxIters;
+	}
+
+	public int GetMaxJointLabels()
+	{
+		return maxJointLabels;
+	}
+
+	public double GetMaxDist()
+	{
+		return maxDist;
+	}
+
+
+	public String toString()
+	{
+		if(maxIters != NO_LIMIT)
+			return "iters " + maxIters;
+		if(maxJointLabels != NO_LIMIT)
+			return "labels " + maxJointLabels;
+		return "dist " + maxDist;
+	}
+
+
+	// Member variables:
+
+	private int maxIters;
+	private int maxJointLabels;
+	private double maxDist;
+	private volatile boolean stopRequested;
+}
@@ -0,0 +1,63 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+// VectorKernels class:
+//    SIMD versions of the distance kernels over the dense rows kept by
+//    DenseDists, using the incubating Vector API.  This is the only class
+//    that touches jdk.incubator.vector, so the rest of the code still runs
+//    without the module; DenseDists only calls in here when the module is
+//    there.  Rows are padded with zeros to a multiple of
+//    DenseDists.ROW_ALIGN doubles, which is a whole number of vectors of
+//    the species used here.
+final class VectorKernels
+{
+	private VectorKernels()
+	{
+	}
+
+
+	// L1Dist function:
+	//    Sum of |p1 - p2| over two rows of length len starting at off1 and
+	//    off2 in probs.
+	static double L1Dist(double[] probs, int off1, int off2, int len)
+	{
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		for(int i = 0; i < len; i += SPECIES.length())
+		{
+			DoubleVector p1 = DoubleVector.fromArray(SPECIES, probs, off1 + i);
+			DoubleVector p2 = DoubleVector.fromArray(SPECIES, probs, off2 + i);
+			sum = sum.add(p1.sub(p2).abs());
+		}
+		return sum.reduceLanes(VectorOperators.ADD);
+	}
+
+
+	// KLDivergence function:
+	//    Sum of (p1 - p2) * (lg p1 - lg p2) over the columns where both rows
+	//    are non-zero, as SparseDist.KLDivergence computes it.  Zero
+	//    columns have a log of 0 in logs, and are masked out.
+	static double KLDivergence(double[] probs, double[] logs, int off1, int off2,
+							   int len)
+	{
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		for(int i = 0; i < len; i += SPECIES.length())
+		{
+			DoubleVector p1 = DoubleVector.fromArray(SPECIES, probs, off1 + i);
+			DoubleVector p2 = DoubleVector.fromArray(SPECIES, probs, off2 + i);
+			VectorMask<Double> shared = p1.compare(VectorOperators.GT, 0.0)
+				.and(p2.compare(VectorOperators.GT, 0.0));
+			DoubleVector lp1 = DoubleVector.fromArray(SPECIES, logs, off1 + i);
+			DoubleVector lp2 = DoubleVector.fromArray(SPECIES, logs, off2 + i);
+			sum = sum.add(p1.sub(p2).mul(lp1.sub(lp2)), shared);
+		}
+		return sum.reduceLanes(VectorOperators.ADD);
+	}
+
+
+	private static final VectorSpecies<Double> SPECIES =
+		(DoubleVector.SPECIES_PREFERRED.length() <= DenseDists.ROW_ALIGN ?
+		 DoubleVector.SPECIES_PREFERRED : DoubleVector.SPECIES_512);
+}